@@ -0,0 +1,92 @@
+package io.mimiri.app;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares per-call latency of the old open/close-per-call pattern against the shared connection.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CacheConnectionBenchmark {
+  private static final String DB_NAME = "cache-benchmark";
+  private static final int ROWS = 500;
+  private static final int CALLS = 2000;
+
+  private Context context;
+  private MimiriDatabase database;
+
+  @Before
+  public void setUp() {
+    context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    context.deleteDatabase(DB_NAME);
+    database = new MimiriDatabase(context, DB_NAME, MimiriDatabase.Profile.DEFAULT);
+    SQLiteDatabase db = database.open();
+    db.beginTransaction();
+    try {
+      for (int i = 0; i < ROWS; i++) {
+        ContentValues values = new ContentValues();
+        values.put("id", "note-" + i);
+        values.put("data", "{\"id\":\"note-" + i + "\",\"size\":" + i + "}");
+        db.insert("mimer_note", null, values);
+      }
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+    database.close();
+  }
+
+  @After
+  public void tearDown() {
+    database.close();
+    context.deleteDatabase(DB_NAME);
+  }
+
+  @Test
+  public void getNoteLatency() {
+    // warm up both paths so the first-open cost is not attributed to either
+    readWithOpenClose(100);
+    readShared(100);
+
+    long openClose = readWithOpenClose(CALLS);
+    long shared = readShared(CALLS);
+    System.out.println("CacheConnectionBenchmark open/close per call: " + (openClose / CALLS) + " ns/call");
+    System.out.println("CacheConnectionBenchmark shared connection:   " + (shared / CALLS) + " ns/call");
+  }
+
+  private long readWithOpenClose(int calls) {
+    long start = System.nanoTime();
+    for (int i = 0; i < calls; i++) {
+      try (SQLiteDatabase db = database.getReadableDatabase()) {
+        readNote(db, i);
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  private long readShared(int calls) {
+    long start = System.nanoTime();
+    for (int i = 0; i < calls; i++) {
+      readNote(database.open(), i);
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static void readNote(SQLiteDatabase db, int i) {
+    try (Cursor reader = db.rawQuery("SELECT data FROM mimer_note WHERE id = ?", new String[] { "note-" + (i % ROWS) })) {
+      if (reader.moveToFirst()) {
+        reader.getString(0);
+      }
+    }
+  }
+}
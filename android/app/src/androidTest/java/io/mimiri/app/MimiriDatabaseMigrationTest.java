@@ -0,0 +1,110 @@
+package io.mimiri.app;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashSet;
+import java.util.Set;
+
+@RunWith(AndroidJUnit4.class)
+public class MimiriDatabaseMigrationTest {
+  private static final String DB_NAME = "cache-migration-test";
+
+  private Context context;
+  private MimiriDatabase database;
+
+  @Before
+  public void setUp() {
+    context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    context.deleteDatabase(DB_NAME);
+  }
+
+  @After
+  public void tearDown() {
+    if (database != null) {
+      database.close();
+    }
+    context.deleteDatabase(DB_NAME);
+  }
+
+  @Test
+  public void upgradeFromVersion1KeepsRows() throws Exception {
+    try (SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(DB_NAME), null)) {
+      db.execSQL("CREATE TABLE mimer_user (id INTEGER NOT NULL PRIMARY KEY AUTOINCREMENT, username TEXT NOT NULL UNIQUE, data TEXT NOT NULL, pre_login TEXT NOT NULL)");
+      db.execSQL("CREATE TABLE mimer_key (id TEXT NOT NULL PRIMARY KEY, user_id TEXT NOT NULL, data TEXT NOT NULL)");
+      db.execSQL("CREATE TABLE mimer_note (id TEXT NOT NULL PRIMARY KEY, data TEXT NOT NULL)");
+      db.execSQL("INSERT INTO mimer_user (username, data, pre_login) VALUES ('user', '{}', '{}')");
+      db.execSQL("INSERT INTO mimer_key (id, user_id, data) VALUES ('key', 'user', '{}')");
+      db.execSQL("INSERT INTO mimer_note (id, data) VALUES ('note', '{}')");
+      db.setVersion(1);
+    }
+
+    database = new MimiriDatabase(context, DB_NAME, MimiriDatabase.Profile.DEFAULT);
+    SQLiteDatabase db = database.open();
+
+    assertEquals(MimiriDatabase.VERSION, db.getVersion());
+    assertEquals(1, count(db, "mimer_user"));
+    assertEquals(1, count(db, "mimer_key"));
+    assertEquals(1, count(db, "mimer_note"));
+    assertTrue(columns(db, "mimer_note").contains("hash"));
+    assertTrue(columns(db, "mimer_note").contains("format"));
+    assertTrue(indexes(db, "mimer_key").contains("mimer_key_user_id_id"));
+    // rows from before compression keep plain text and read back as such
+    try (Cursor reader = db.rawQuery("SELECT data, format FROM mimer_note WHERE id = 'note'", null)) {
+      assertTrue(reader.moveToFirst());
+      assertEquals(NoteCodec.FORMAT_TEXT, reader.getLong(1));
+      assertEquals("{}", NoteCodec.decode(reader, 0, 1));
+    }
+  }
+
+  @Test
+  public void freshInstallMatchesUpgradedSchema() {
+    database = new MimiriDatabase(context, DB_NAME, MimiriDatabase.Profile.DEFAULT);
+    SQLiteDatabase db = database.open();
+
+    assertEquals(MimiriDatabase.VERSION, db.getVersion());
+    assertTrue(columns(db, "mimer_user").contains("hash"));
+    assertTrue(columns(db, "mimer_key").contains("hash"));
+    assertTrue(columns(db, "mimer_note").contains("hash"));
+    assertTrue(columns(db, "mimer_note").contains("format"));
+    assertTrue(indexes(db, "mimer_key").contains("mimer_key_user_id_id"));
+  }
+
+  private static int count(SQLiteDatabase db, String table) {
+    try (Cursor reader = db.rawQuery("SELECT COUNT(*) FROM " + table, null)) {
+      reader.moveToFirst();
+      return reader.getInt(0);
+    }
+  }
+
+  private static Set<String> columns(SQLiteDatabase db, String table) {
+    Set<String> result = new HashSet<>();
+    try (Cursor reader = db.rawQuery("PRAGMA table_info(" + table + ")", null)) {
+      while (reader.moveToNext()) {
+        result.add(reader.getString(1));
+      }
+    }
+    return result;
+  }
+
+  private static Set<String> indexes(SQLiteDatabase db, String table) {
+    Set<String> result = new HashSet<>();
+    try (Cursor reader = db.rawQuery("PRAGMA index_list(" + table + ")", null)) {
+      while (reader.moveToNext()) {
+        result.add(reader.getString(1));
+      }
+    }
+    return result;
+  }
+}
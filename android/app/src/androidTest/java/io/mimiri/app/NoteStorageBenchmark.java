@@ -0,0 +1,88 @@
+package io.mimiri.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Compares plain text and compressed mimer_note storage: file size, write and read latency per payload size.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NoteStorageBenchmark {
+  private static final String DB_NAME = "cache-storage-benchmark";
+  private static final int ROWS = 200;
+  private static final int[] PAYLOAD_BYTES = { 1024, 16 * 1024, 128 * 1024 };
+  private static final String[] NOTE_KEYS = { "id" };
+  private static final String[] NOTE_VALUES = { "data", "format" };
+
+  @Test
+  public void compareFormats() throws Exception {
+    Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    for (int size : PAYLOAD_BYTES) {
+      String payload = payload(size);
+      run(context, "plain", NoteCodec.PLAIN, size, payload);
+      run(context, "deflate", NoteCodec.DEFAULT, size, payload);
+    }
+  }
+
+  private static void run(Context context, String label, NoteCodec codec, int size, String payload) throws Exception {
+    context.deleteDatabase(DB_NAME);
+    MimiriDatabase database = new MimiriDatabase(context, DB_NAME, MimiriDatabase.Profile.DEFAULT);
+    try {
+      SQLiteDatabase db = database.open();
+
+      long writeStart = System.nanoTime();
+      db.beginTransaction();
+      try (UpsertStatement upsert = new UpsertStatement(db, "mimer_note", NOTE_KEYS, NOTE_VALUES)) {
+        for (int i = 0; i < ROWS; i++) {
+          String json = "{\"id\":" + i + "," + payload;
+          NoteCodec.Encoded encoded = codec.encode(json);
+          upsert.execute(new String[] { "note-" + i }, new Object[] { encoded.data, encoded.format }, HashUtil.sha256(json));
+        }
+        db.setTransactionSuccessful();
+      } finally {
+        db.endTransaction();
+      }
+      long writeNanos = System.nanoTime() - writeStart;
+
+      long readStart = System.nanoTime();
+      for (int i = 0; i < ROWS; i++) {
+        try (Cursor reader = db.rawQuery("SELECT data, format FROM mimer_note WHERE id = ?", new String[] { "note-" + i })) {
+          reader.moveToFirst();
+          NoteCodec.decode(reader, 0, 1);
+        }
+      }
+      long readNanos = System.nanoTime() - readStart;
+
+      try (Cursor reader = db.rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null)) {
+        reader.moveToFirst();
+      }
+      long fileBytes = context.getDatabasePath(DB_NAME).length();
+
+      System.out.println("NoteStorageBenchmark " + label + " payload=" + size + "B"
+        + " file=" + (fileBytes / 1024) + "KiB"
+        + " write=" + (writeNanos / ROWS / 1000) + "us/row"
+        + " read=" + (readNanos / ROWS / 1000) + "us/row");
+    } finally {
+      database.close();
+      context.deleteDatabase(DB_NAME);
+    }
+  }
+
+  // shaped like a cached note: base64 ciphertext plus a little structure
+  private static String payload(int size) {
+    byte[] cipher = new byte[size * 3 / 4];
+    new Random(size).nextBytes(cipher);
+    return "\"keyName\":\"00000000-0000-0000-0000-000000000000\",\"items\":[{\"type\":\"metadata\",\"data\":\""
+      + Base64.getEncoder().encodeToString(cipher) + "\"}]}";
+  }
+}
@@ -0,0 +1,228 @@
+package io.mimiri.app;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+// Content addressed store for bundle files, shared by all installed versions. A blob is named by the
+// SHA-256 of its inflated content and every bundle directory holds hard links to the blobs it uses,
+// so a file that is unchanged between releases is stored once. Each bundle lists its blobs in
+// .manifest.json, blobs no manifest refers to are removed by collect().
+class BlobStore {
+  static final String DIR = ".blobs";
+  static final String MANIFEST = ".manifest.json";
+  private static final String ALIASES = "aliases";
+
+  static class Collected {
+    final int blobs;
+    final long bytes;
+
+    Collected(int blobs, long bytes) {
+      this.blobs = blobs;
+      this.bytes = bytes;
+    }
+  }
+
+  private final File _root;
+  // blobs linked by installs that have not committed their manifest yet, collect() must keep them
+  private final Map<String, Integer> _pinned = new HashMap<>();
+
+  BlobStore(File bundlesPath) {
+    _root = new File(bundlesPath, DIR);
+  }
+
+  private File blob(String hash) {
+    return new File(new File(_root, hash.substring(0, 2)), hash);
+  }
+
+  // Maps the hash of a file's packed (base64 gzip) form to the hash of its content. The same packed
+  // bytes always inflate to the same content, so a known alias lets an install skip inflating the file.
+  synchronized String alias(String packedHash) {
+    File alias = new File(new File(_root, ALIASES), packedHash);
+    if (!alias.exists()) {
+      return null;
+    }
+    try {
+      String hash = new String(Files.readAllBytes(alias.toPath()), StandardCharsets.UTF_8);
+      return blob(hash).exists() ? hash : null;
+    } catch (IOException e) {
+      System.out.println(e.toString());
+      return null;
+    }
+  }
+
+  synchronized void addAlias(String packedHash, String hash) {
+    File dir = new File(_root, ALIASES);
+    try {
+      if (dir.exists() || dir.mkdirs()) {
+        Files.write(new File(dir, packedHash).toPath(), hash.getBytes(StandardCharsets.UTF_8));
+      }
+    } catch (IOException e) {
+      System.out.println(e.toString());
+    }
+  }
+
+  // links an existing blob to target, returns false if the blob is not in the store
+  synchronized boolean link(String hash, File target) throws IOException {
+    File blob = blob(hash);
+    if (!blob.exists()) {
+      return false;
+    }
+    linkOrCopy(blob, target);
+    pin(hash);
+    return true;
+  }
+
+  // Takes a freshly written file into the store. If the content is already stored the file is
+  // replaced by a link to the existing blob, otherwise the file itself becomes the blob.
+  synchronized void adopt(String hash, File file) throws IOException {
+    File blob = blob(hash);
+    if (blob.exists()) {
+      Files.delete(file.toPath());
+      linkOrCopy(blob, file);
+    } else {
+      File parent = blob.getParentFile();
+      if (!parent.exists() && !parent.mkdirs()) {
+        throw new IOException("Failed to create " + parent);
+      }
+      linkOrCopy(file, blob);
+    }
+    pin(hash);
+  }
+
+  synchronized void release(Collection<String> hashes) {
+    for (String hash : hashes) {
+      Integer count = _pinned.get(hash);
+      if (count != null && count > 1) {
+        _pinned.put(hash, count - 1);
+      } else {
+        _pinned.remove(hash);
+      }
+    }
+  }
+
+  // removes blobs that no installed bundle and no running install refers to, then stale aliases
+  synchronized Collected collect(File bundlesPath) {
+    Set<String> referenced = new HashSet<>(_pinned.keySet());
+    File[] bundles = bundlesPath.listFiles();
+    if (bundles != null) {
+      for (File bundle : bundles) {
+        File manifest = new File(bundle, MANIFEST);
+        if (manifest.exists()) {
+          try {
+            JSONObject files = new JSONObject(FileUtil.readAllText(manifest)).getJSONObject("files");
+            Iterator<String> paths = files.keys();
+            while (paths.hasNext()) {
+              referenced.add(files.getString(paths.next()));
+            }
+          } catch (Exception e) {
+            // an unreadable manifest makes every blob suspect, keep them all rather than break a bundle
+            System.out.println(e.toString());
+            return new Collected(0, 0);
+          }
+        }
+      }
+    }
+    int count = 0;
+    long bytes = 0;
+    File[] shards = _root.listFiles();
+    if (shards != null) {
+      for (File shard : shards) {
+        if (shard.getName().equals(ALIASES) || !shard.isDirectory()) {
+          continue;
+        }
+        File[] blobs = shard.listFiles();
+        if (blobs != null) {
+          for (File blob : blobs) {
+            if (!referenced.contains(blob.getName())) {
+              long length = blob.length();
+              if (blob.delete()) {
+                count++;
+                bytes += length;
+              }
+            }
+          }
+        }
+      }
+    }
+    File[] aliases = new File(_root, ALIASES).listFiles();
+    if (aliases != null) {
+      for (File alias : aliases) {
+        try {
+          String hash = new String(Files.readAllBytes(alias.toPath()), StandardCharsets.UTF_8);
+          if (!blob(hash).exists() && !alias.delete()) {
+            System.out.println("Failed to delete " + alias);
+          }
+        } catch (IOException e) {
+          System.out.println(e.toString());
+        }
+      }
+    }
+    return new Collected(count, bytes);
+  }
+
+  // Bytes of a manifest bundle not shared with the store: files that fell back to a copy, and files
+  // the manifest does not list. A file that is a link to its blob costs nothing extra.
+  long unsharedSize(File bundle) {
+    JSONObject files;
+    try {
+      files = new JSONObject(FileUtil.readAllText(new File(bundle, MANIFEST))).getJSONObject("files");
+    } catch (Exception e) {
+      System.out.println(e.toString());
+      return FileUtil.size(bundle);
+    }
+    return unsharedSize(bundle, "", files);
+  }
+
+  private long unsharedSize(File dir, String prefix, JSONObject files) {
+    long total = 0;
+    File[] children = dir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        String path = prefix + child.getName();
+        if (child.isDirectory()) {
+          total += unsharedSize(child, path + "/", files);
+        } else if (!isLinked(child, files.optString(path, null))) {
+          total += child.length();
+        }
+      }
+    }
+    return total;
+  }
+
+  private boolean isLinked(File file, String hash) {
+    if (hash == null) {
+      return false;
+    }
+    File blob = blob(hash);
+    try {
+      return blob.exists() && Files.isSameFile(file.toPath(), blob.toPath());
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private void pin(String hash) {
+    Integer count = _pinned.get(hash);
+    _pinned.put(hash, count == null ? 1 : count + 1);
+  }
+
+  // hard links need both paths on one file system, which holds for everything under files/bundles
+  private static void linkOrCopy(File existing, File link) throws IOException {
+    try {
+      Files.createLink(link.toPath(), existing.toPath());
+    } catch (IOException | UnsupportedOperationException e) {
+      Files.copy(existing.toPath(), link.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package io.mimiri.app;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// In-memory index of the installed bundles (version -> info.json content), persisted to
+// bundles/catalog.json so startup does not have to open and parse every info.json. The bundle
+// directories stay the source of truth: when the catalog is missing, unreadable or lists other
+// versions than the directories on disk, it is rebuilt from them. The directory name is the one key
+// of a bundle: every entry's "version" is set to it, so retention, use() and delete() all agree even
+// when an info.json carries a different version.
+class BundleCatalog {
+  static final String FILE = "catalog.json";
+
+  private final File _bundlesPath;
+  private final File _file;
+  private final Map<String, JSObject> _bundles = new LinkedHashMap<>();
+  private boolean _loaded = false;
+
+  BundleCatalog(File bundlesPath) {
+    _bundlesPath = bundlesPath;
+    _file = new File(bundlesPath, FILE);
+  }
+
+  private void ensureLoaded() {
+    if (_loaded) {
+      return;
+    }
+    _loaded = true;
+    if (_file.exists()) {
+      JSObject stored = FileUtil.readJson(_file);
+      if (stored != null) {
+        try {
+          Iterator<String> versions = stored.keys();
+          while (versions.hasNext()) {
+            String version = versions.next();
+            _bundles.put(version, keyed(version, JSObject.fromJSONObject(stored.getJSONObject(version))));
+          }
+          if (_bundles.keySet().equals(installedDirs())) {
+            return;
+          }
+        } catch (JSONException e) {
+          System.out.println(e.toString());
+        }
+      }
+    }
+    rebuild();
+  }
+
+  // only compares names, which is a single directory listing without opening any file
+  private Set<String> installedDirs() {
+    Set<String> versions = new HashSet<>();
+    File[] files = _bundlesPath.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.isDirectory() && !file.getName().startsWith(".")) {
+          versions.add(file.getName());
+        }
+      }
+    }
+    return versions;
+  }
+
+  synchronized void rebuild() {
+    _loaded = true;
+    _bundles.clear();
+    File[] files = _bundlesPath.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        File infoPath = new File(file, "info.json");
+        if (!file.getName().startsWith(".") && infoPath.exists()) {
+          JSObject info = FileUtil.readJson(infoPath);
+          if (info != null) {
+            _bundles.put(file.getName(), keyed(file.getName(), info));
+          }
+        }
+      }
+    }
+    persist();
+  }
+
+  // copies, callers are free to decorate them
+  synchronized List<JSObject> bundles() {
+    ensureLoaded();
+    List<JSObject> result = new ArrayList<>(_bundles.size());
+    for (JSObject info : _bundles.values()) {
+      result.add(copy(info));
+    }
+    return result;
+  }
+
+  synchronized JSObject get(String version) {
+    ensureLoaded();
+    JSObject info = _bundles.get(version);
+    return info != null ? copy(info) : null;
+  }
+
+  synchronized void put(String version, JSObject info) {
+    ensureLoaded();
+    _bundles.put(version, keyed(version, copy(info)));
+    persist();
+  }
+
+  synchronized void remove(String version) {
+    ensureLoaded();
+    if (_bundles.remove(version) != null) {
+      persist();
+    }
+  }
+
+  private void persist() {
+    try {
+      JSONObject stored = new JSONObject();
+      for (Map.Entry<String, JSObject> entry : _bundles.entrySet()) {
+        stored.put(entry.getKey(), entry.getValue());
+      }
+      FileUtil.writeAtomic(_file, stored.toString());
+    } catch (Exception e) {
+      // the next load notices and rebuilds from the bundle directories
+      System.out.println(e.toString());
+    }
+  }
+
+  private static JSObject keyed(String version, JSObject info) {
+    info.put("version", version);
+    return info;
+  }
+
+  private static JSObject copy(JSObject info) {
+    try {
+      return new JSObject(info.toString());
+    } catch (JSONException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,423 @@
+package io.mimiri.app;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+// One in-progress bundle install. Files arrive as base64 encoded gzip in one or more chunks and are
+// decoded and inflated straight to disk, so no file is ever held in memory whole. Everything is written
+// to a private directory under bundles/.staging and fsynced, and commit() publishes it with a rename,
+// so bundles/<version> is either absent or complete, even across a crash. With a BlobStore every file
+// is hashed while it is inflated and deduplicated against the blobs of the installed versions.
+class BundleInstall {
+  static final String STAGING = ".staging";
+
+  static class CancelledException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    CancelledException(String version) {
+      super("Bundle " + version + " install cancelled");
+    }
+  }
+
+  // base64 characters decoded per step when a whole file arrives in one piece, a multiple of 4
+  private static final int DECODE_CHARS = 64 * 1024;
+
+  private final String _version;
+  private final File _target;
+  private final File _dir;
+  private final BlobStore _blobs;
+  private final Map<String, GzipStreamWriter> _open = new HashMap<>();
+  private final Map<String, String> _hashes = new ConcurrentHashMap<>();
+  private final AtomicBoolean _cancelled = new AtomicBoolean();
+
+  BundleInstall(String version, File target) throws IOException {
+    this(version, target, null);
+  }
+
+  BundleInstall(String version, File target, BlobStore blobs) throws IOException {
+    _version = version;
+    _target = target;
+    _blobs = blobs;
+    // unique per install so an aborted install still winding down never shares files with its successor
+    _dir = new File(new File(target.getParentFile(), STAGING), target.getName() + "-" + System.nanoTime());
+    if (!_dir.mkdirs()) {
+      throw new IOException("Failed to create " + _dir);
+    }
+  }
+
+  // removes whatever a crash left behind in the staging area, call before any install starts
+  static void cleanStaging(File bundlesPath) {
+    File staging = new File(bundlesPath, STAGING);
+    if (staging.exists()) {
+      FileUtil.deleteDir(staging);
+    }
+  }
+
+  String version() {
+    return _version;
+  }
+
+  // where the files are written until commit()
+  File dir() {
+    return _dir;
+  }
+
+  File target() {
+    return _target;
+  }
+
+  // chunks of one file must arrive in order and every chunk except the last must be a multiple of 4 characters
+  void append(String path, String base64, boolean last) throws IOException {
+    if (_cancelled.get()) {
+      throw new CancelledException(_version);
+    }
+    GzipStreamWriter writer = _open.get(path);
+    if (writer == null) {
+      writer = GzipStreamWriter.toFile(prepare(path));
+      _open.put(path, writer);
+    }
+    try {
+      byte[] data = Base64.getDecoder().decode(base64);
+      writer.write(data, 0, data.length);
+      if (last) {
+        writer.finish();
+        _open.remove(path);
+        writer.close();
+        stored(path, writer.hash());
+      }
+    } catch (IOException | RuntimeException e) {
+      _open.remove(path);
+      writer.close();
+      throw e;
+    }
+  }
+
+  // writes a whole file that is already in memory as one base64 string, decoding it in slices.
+  // Does not touch the chunked state, so different files may be written from different threads.
+  void write(String path, String base64) throws IOException {
+    File target = prepare(path);
+    String packedHash = null;
+    if (_blobs != null) {
+      // hashing the packed form is far cheaper than inflating and writing a file that is already stored
+      packedHash = HashUtil.toHex(HashUtil.sha256(base64));
+      String hash = _blobs.alias(packedHash);
+      if (hash != null && _blobs.link(hash, target)) {
+        _hashes.put(path, hash);
+        return;
+      }
+    }
+    GzipStreamWriter writer = GzipStreamWriter.toFile(target);
+    try {
+      int length = base64.length();
+      for (int offset = 0; offset < length; offset += DECODE_CHARS) {
+        if (_cancelled.get()) {
+          throw new CancelledException(_version);
+        }
+        byte[] data = Base64.getDecoder().decode(base64.substring(offset, Math.min(length, offset + DECODE_CHARS)));
+        writer.write(data, 0, data.length);
+      }
+      writer.finish();
+    } finally {
+      writer.close();
+    }
+    stored(path, writer.hash());
+    if (packedHash != null) {
+      _blobs.addAlias(packedHash, writer.hash());
+    }
+  }
+
+  private void stored(String path, String hash) throws IOException {
+    if (_blobs != null) {
+      _blobs.adopt(hash, resolve(_dir, path));
+    }
+    _hashes.put(path, hash);
+  }
+
+  private interface Body {
+    void write(OutputStream out) throws IOException;
+  }
+
+  // writes path through body, fsyncs it and fails unless the content hashes to the expected value
+  private void writeVerified(String path, String hash, Body body) throws IOException {
+    MessageDigest digest = HashUtil.sha256();
+    try (FileOutputStream file = new FileOutputStream(prepare(path))) {
+      OutputStream out = new DigestOutputStream(new BufferedOutputStream(file, 64 * 1024), digest);
+      body.write(out);
+      out.flush();
+      file.getFD().sync();
+    }
+    String actual = HashUtil.toHex(digest.digest());
+    if (!actual.equals(hash)) {
+      throw new IOException("Hash mismatch for " + path);
+    }
+    stored(path, actual);
+  }
+
+  // Applies a delta against the installed bundle in baseDir. Each entry is { path, hash } plus one of:
+  //   nothing          the file is unchanged, "from" (default path) names it in the base bundle
+  //   patch            base64 gzip BundlePatch to apply to the base file "from"
+  //   content          base64 gzip of a new file, as in save()
+  // Every resulting file must hash to its entry's hash.
+  void applyDelta(File baseDir, JSONArray files) throws IOException, JSONException {
+    for (int i = 0; i < files.length(); i++) {
+      if (_cancelled.get()) {
+        throw new CancelledException(_version);
+      }
+      JSONObject item = files.getJSONObject(i);
+      String path = item.getString("path");
+      String hash = item.getString("hash");
+      try {
+        if (item.has("content")) {
+          write(path, item.getString("content"));
+          if (!hash.equals(_hashes.get(path))) {
+            throw new IOException("Hash mismatch for " + path);
+          }
+        } else if (item.has("patch")) {
+          File source = resolve(baseDir, item.optString("from", path));
+          InputStream patch = new GZIPInputStream(Base64.getDecoder().wrap(
+            new ByteArrayInputStream(item.getString("patch").getBytes(StandardCharsets.US_ASCII))), 64 * 1024);
+          try {
+            writeVerified(path, hash, out -> BundlePatch.apply(source, patch, out));
+          } finally {
+            patch.close();
+          }
+        } else {
+          reuse(path, resolve(baseDir, item.optString("from", path)), hash);
+        }
+      } catch (IOException | RuntimeException e) {
+        throw new IOException("Failed to apply delta for " + path, e);
+      }
+    }
+  }
+
+  // unchanged file: a link to the stored blob when there is one, else a verified copy from the base bundle
+  private void reuse(String path, File source, String hash) throws IOException {
+    File target = prepare(path);
+    if (_blobs != null && _blobs.link(hash, target)) {
+      _hashes.put(path, hash);
+      return;
+    }
+    writeVerified(path, hash, out -> Files.copy(source.toPath(), out));
+  }
+
+  // fails when the sender gave a hash for path and the extracted content does not match it
+  void expect(String path, String hash) throws IOException {
+    if (hash != null && !hash.equals(_hashes.get(path))) {
+      throw new IOException("Hash mismatch for " + path);
+    }
+  }
+
+  private void write(String[] file) throws IOException {
+    write(file[0], file[1]);
+    expect(file[0], file.length > 2 ? file[2] : null);
+  }
+
+  // flattens the legacy nested { name, files | content, hash? } structure sent by save() into
+  // { path, content, hash } triples, hash is null when the bundle does not carry one
+  static void collect(String prefix, JSONArray files, List<String[]> result) throws JSONException {
+    for (int i = 0; i < files.length(); i++) {
+      JSONObject item = files.getJSONObject(i);
+      String path = prefix + item.getString("name");
+      if (item.has("files")) {
+        collect(path + "/", item.getJSONArray("files"), result);
+      } else {
+        result.add(new String[] { path, item.getString("content"), item.has("hash") ? item.getString("hash") : null });
+      }
+    }
+  }
+
+  // Extracts the files on up to "threads" workers. The first failure cancels the remaining work and the
+  // error reported is the one of the earliest failing file in bundle order, independent of scheduling.
+  void writeAll(List<String[]> files, int threads) throws IOException {
+    if (threads <= 1 || files.size() <= 1) {
+      for (String[] file : files) {
+        write(file);
+      }
+      return;
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+    try {
+      List<Future<?>> futures = new ArrayList<>(files.size());
+      for (String[] file : files) {
+        futures.add(pool.submit(() -> {
+          if (_cancelled.get()) {
+            return null;
+          }
+          try {
+            write(file);
+          } catch (IOException | RuntimeException e) {
+            _cancelled.set(true);
+            throw e;
+          }
+          return null;
+        }));
+      }
+      IOException failure = null;
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          futures.get(i).get();
+        } catch (ExecutionException e) {
+          if (failure == null && !(e.getCause() instanceof CancelledException)) {
+            failure = new IOException("Failed to extract " + files.get(i)[0], e.getCause());
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          _cancelled.set(true);
+          throw new IOException("Bundle " + _version + " install interrupted", e);
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      if (_cancelled.get()) {
+        throw new CancelledException(_version);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  // Files are already fsynced by their writers. info.json goes in last, then the directory entries are
+  // synced and the staging directory is renamed into place.
+  void commit(JSObject info) throws IOException, JSONException {
+    if (!_open.isEmpty()) {
+      throw new IOException("Bundle " + _version + " has incomplete files: " + _open.keySet());
+    }
+    if (_cancelled.get()) {
+      throw new CancelledException(_version);
+    }
+    JSONObject files = new JSONObject();
+    for (Map.Entry<String, String> entry : _hashes.entrySet()) {
+      files.put(entry.getKey(), entry.getValue());
+    }
+    JSONObject manifest = new JSONObject();
+    manifest.put("algorithm", "SHA-256");
+    manifest.put("files", files);
+    FileUtil.writeAtomic(new File(_dir, BlobStore.MANIFEST), manifest.toString());
+    FileUtil.writeAtomic(new File(_dir, "info.json"), info.toString());
+    syncDirs(_dir);
+    File replaced = null;
+    if (_target.exists()) {
+      // reinstall of an existing version, move the old copy aside first since rename cannot replace a directory
+      replaced = new File(_dir.getParentFile(), _dir.getName() + ".replaced");
+      Files.move(_target.toPath(), replaced.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+    try {
+      Files.move(_dir.toPath(), _target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      if (replaced != null) {
+        Files.move(replaced.toPath(), _target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      }
+      throw e;
+    }
+    FileUtil.syncDir(_target.getParentFile());
+    releaseBlobs();
+    if (replaced != null) {
+      FileUtil.deleteDir(replaced);
+    }
+  }
+
+  // the published manifest now protects the blobs this install linked
+  private void releaseBlobs() {
+    if (_blobs != null) {
+      _blobs.release(new ArrayList<>(_hashes.values()));
+      _hashes.clear();
+    }
+  }
+
+  // stops the install at its next file or chunk, the caller still has to abort it to clean up
+  void cancel() {
+    _cancelled.set(true);
+  }
+
+  void abort() {
+    _cancelled.set(true);
+    for (GzipStreamWriter writer : _open.values()) {
+      try {
+        writer.close();
+      } catch (IOException e) {
+        System.out.println(e.toString());
+      }
+    }
+    _open.clear();
+    FileUtil.deleteDir(_dir);
+    releaseBlobs();
+  }
+
+  // Renames the bundle into the staging area and returns its new location. The rename is quick and
+  // atomic, the caller deletes the returned directory whenever convenient and a crash before that
+  // never leaves a partial bundle that still looks installed.
+  static File retire(File bundle) throws IOException {
+    File staging = new File(bundle.getParentFile(), STAGING);
+    if (!staging.exists() && !staging.mkdirs()) {
+      throw new IOException("Failed to create " + staging);
+    }
+    File doomed = new File(staging, bundle.getName() + "-" + System.nanoTime() + ".deleted");
+    Files.move(bundle.toPath(), doomed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    FileUtil.syncDir(bundle.getParentFile());
+    return doomed;
+  }
+
+  static void remove(File bundle) throws IOException {
+    FileUtil.deleteDir(retire(bundle));
+  }
+
+  private static void syncDirs(File dir) {
+    File[] children = dir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        if (child.isDirectory()) {
+          syncDirs(child);
+        }
+      }
+    }
+    FileUtil.syncDir(dir);
+  }
+
+  private File prepare(String path) throws IOException {
+    File target = resolve(_dir, path);
+    File parent = target.getParentFile();
+    if (parent != null && !parent.exists() && !parent.mkdirs() && !parent.isDirectory()) {
+      throw new IOException("Failed to create " + parent);
+    }
+    return target;
+  }
+
+  // bundle paths come from the web layer, never let them escape the bundle directory
+  private static File resolve(File dir, String path) throws IOException {
+    File target = new File(dir, path);
+    String root = dir.getCanonicalPath() + File.separator;
+    if (path.isEmpty() || path.equals(BlobStore.MANIFEST) || !target.getCanonicalPath().startsWith(root)) {
+      throw new IOException("Invalid bundle path: " + path);
+    }
+    return target;
+  }
+}
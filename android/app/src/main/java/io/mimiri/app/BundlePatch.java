@@ -0,0 +1,94 @@
+package io.mimiri.app;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+// Binary patch that rebuilds a changed bundle file from its previous version. After gunzip a patch is
+// the magic "MBP1" followed by operations, lengths and offsets are unsigned LEB128 varints of at most
+// 9 bytes (63 bits), so they never decode to a negative value:
+//   0 END
+//   1 COPY   offset length   copy length bytes from the base file starting at offset
+//   2 INSERT length bytes    write length literal bytes
+class BundlePatch {
+  static final byte[] MAGIC = { 'M', 'B', 'P', '1' };
+  static final int END = 0;
+  static final int COPY = 1;
+  static final int INSERT = 2;
+
+  static void apply(File base, InputStream patch, OutputStream out) throws IOException {
+    for (byte expected : MAGIC) {
+      if (patch.read() != expected) {
+        throw new IOException("Not a bundle patch");
+      }
+    }
+    byte[] buffer = new byte[64 * 1024];
+    try (RandomAccessFile source = new RandomAccessFile(base, "r")) {
+      while (true) {
+        int op = patch.read();
+        if (op == END) {
+          return;
+        } else if (op == COPY) {
+          long offset = readVarint(patch);
+          long length = readVarint(patch);
+          // offset + length could overflow, compare against what is left after offset instead
+          if (offset > source.length() || length > source.length() - offset) {
+            throw new IOException("Patch copies past the end of " + base.getName());
+          }
+          source.seek(offset);
+          while (length > 0) {
+            int count = (int) Math.min(buffer.length, length);
+            source.readFully(buffer, 0, count);
+            out.write(buffer, 0, count);
+            length -= count;
+          }
+        } else if (op == INSERT) {
+          long length = readVarint(patch);
+          while (length > 0) {
+            int count = patch.read(buffer, 0, (int) Math.min(buffer.length, length));
+            if (count < 0) {
+              throw new EOFException("Truncated bundle patch");
+            }
+            out.write(buffer, 0, count);
+            length -= count;
+          }
+        } else if (op < 0) {
+          throw new EOFException("Truncated bundle patch");
+        } else {
+          throw new IOException("Unknown bundle patch operation " + op);
+        }
+      }
+    }
+  }
+
+  static final int MAX_VARINT_BYTES = 9;
+
+  static long readVarint(InputStream in) throws IOException {
+    long value = 0;
+    for (int i = 0; i < MAX_VARINT_BYTES; i++) {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException("Truncated bundle patch");
+      }
+      value |= (long) (b & 0x7f) << (7 * i);
+      if ((b & 0x80) == 0) {
+        if (value < 0) {
+          throw new IOException("Invalid varint in bundle patch");
+        }
+        return value;
+      }
+    }
+    throw new IOException("Varint longer than " + MAX_VARINT_BYTES + " bytes in bundle patch");
+  }
+
+  static void writeVarint(OutputStream out, long value) throws IOException {
+    while ((value & ~0x7fL) != 0) {
+      out.write((int) ((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+}
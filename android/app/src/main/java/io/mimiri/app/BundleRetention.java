@@ -0,0 +1,152 @@
+package io.mimiri.app;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+// Retention policy for installed bundles. The active, previous and last known good versions, any
+// version newer than the active one (installed but not switched to yet) and the bases of deltas being
+// applied are always kept. Other
+// versions stay around as extra rollback targets while the bundle store fits in the byte budget and
+// are removed oldest first once it does not.
+class BundleRetention {
+  static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+  // config snapshot entry listing the versions a running delta reads from
+  static final String PINNED = "pinnedVersions";
+
+  static class Report {
+    final List<String> removed = new ArrayList<>();
+    long bytesBefore;
+    long bytesAfter;
+    long durationMs;
+
+    JSObject toJson() {
+      JSObject result = new JSObject();
+      result.put("removed", new JSArray(removed));
+      result.put("bytesReclaimed", bytesBefore - bytesAfter);
+      result.put("bytesUsed", bytesAfter);
+      result.put("durationMs", durationMs);
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return "Bundle sweep removed " + removed + ", reclaimed " + (bytesBefore - bytesAfter) + " bytes in " + durationMs + " ms";
+    }
+  }
+
+  private final File _bundlesPath;
+  private final BundleCatalog _catalog;
+  private final BlobStore _blobs;
+  private final Object _lock;
+
+  // lock is held by the plugin while it changes the active version, the sweep re-checks under it
+  BundleRetention(File bundlesPath, BundleCatalog catalog, BlobStore blobs, Object lock) {
+    _bundlesPath = bundlesPath;
+    _catalog = catalog;
+    _blobs = blobs;
+    _lock = lock;
+  }
+
+  static Set<String> retained(JSObject config, List<JSObject> bundles, String baseVersion) {
+    Set<String> keep = new HashSet<>();
+    String active = config.getString("activeVersion", "base");
+    keep.add(active);
+    keep.add(config.getString("previousActiveVersion", "base"));
+    JSONArray pinned = config.optJSONArray(PINNED);
+    if (pinned != null) {
+      for (int i = 0; i < pinned.length(); i++) {
+        keep.add(pinned.optString(i));
+      }
+    }
+    String activeVersion = "base".equals(active) ? baseVersion : active;
+    String lastGood = null;
+    for (JSObject info : bundles) {
+      String version = info.getString("version", "");
+      if (Boolean.TRUE.equals(info.getBoolean("good", false)) && (lastGood == null || VersionUtil.isGreater(version, lastGood))) {
+        lastGood = version;
+      }
+      if (VersionUtil.isGreater(version, activeVersion)) {
+        keep.add(version);
+      }
+    }
+    if (lastGood != null) {
+      keep.add(lastGood);
+    }
+    return keep;
+  }
+
+  // Runs on the install worker so it never races an install or a blob collection, at minimum thread
+  // priority so it yields to the UI and WebView. config is read under the lock for every removal.
+  Report sweep(long budget, Supplier<JSObject> config) {
+    Thread thread = Thread.currentThread();
+    int priority = thread.getPriority();
+    thread.setPriority(Thread.MIN_PRIORITY);
+    long start = System.nanoTime();
+    Report report = new Report();
+    try {
+      List<JSObject> bundles = _catalog.bundles();
+      bundles.sort((a, b) -> {
+        String left = a.getString("version", "");
+        String right = b.getString("version", "");
+        return VersionUtil.isGreater(left, right) ? 1 : VersionUtil.isGreater(right, left) ? -1 : 0;
+      });
+      report.bytesBefore = usage();
+      long used = report.bytesBefore;
+      for (JSObject info : bundles) {
+        if (used <= budget) {
+          break;
+        }
+        String version = info.getString("version", "");
+        File retired;
+        synchronized (_lock) {
+          if (retained(config.get(), _catalog.bundles(), VersionInfo.BaseVersion).contains(version)) {
+            continue;
+          }
+          File dir = new File(_bundlesPath, version);
+          if (!dir.exists()) {
+            continue;
+          }
+          retired = BundleInstall.retire(dir);
+          _catalog.remove(version);
+        }
+        FileUtil.deleteDir(retired);
+        _blobs.collect(_bundlesPath);
+        report.removed.add(version);
+        used = usage();
+      }
+      report.bytesAfter = used;
+    } catch (Exception e) {
+      System.out.println(e.toString());
+      report.bytesAfter = usage();
+    } finally {
+      thread.setPriority(priority);
+    }
+    report.durationMs = (System.nanoTime() - start) / 1_000_000;
+    return report;
+  }
+
+  // Bytes held by bundles: the blob store plus every bundle file that is not a link to a blob, which
+  // covers bundles installed before the store and files where linking fell back to a copy.
+  long usage() {
+    long total = FileUtil.size(new File(_bundlesPath, BlobStore.DIR));
+    File[] dirs = _bundlesPath.listFiles();
+    if (dirs != null) {
+      for (File dir : dirs) {
+        if (!dir.isDirectory() || dir.getName().startsWith(".")) {
+          continue;
+        }
+        total += new File(dir, BlobStore.MANIFEST).exists() ? _blobs.unsharedSize(dir) : FileUtil.size(dir);
+      }
+    }
+    return total;
+  }
+}
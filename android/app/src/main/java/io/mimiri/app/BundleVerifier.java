@@ -0,0 +1,116 @@
+package io.mimiri.app;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Re-hashes every file of an installed bundle against its .manifest.json. Files are handed out to the
+// workers one at a time from a shared index, so a few large chunks do not leave the other cores idle.
+class BundleVerifier {
+  static class Result {
+    boolean manifest;
+    int files;
+    long bytes;
+    long durationMs;
+    final List<String> corrupt = new ArrayList<>();
+
+    boolean ok() {
+      return manifest && corrupt.isEmpty();
+    }
+
+    JSObject toJson() {
+      JSObject result = new JSObject();
+      result.put("manifest", manifest);
+      result.put("files", files);
+      result.put("bytes", bytes);
+      result.put("durationMs", durationMs);
+      result.put("corrupt", new JSArray(corrupt));
+      return result;
+    }
+  }
+
+  static Result verify(File dir, int threads) throws IOException {
+    long start = System.nanoTime();
+    Result result = new Result();
+    File manifestFile = new File(dir, BlobStore.MANIFEST);
+    if (!manifestFile.exists()) {
+      // installed before bundles carried a manifest, there is nothing to compare against
+      result.durationMs = (System.nanoTime() - start) / 1_000_000;
+      return result;
+    }
+    List<String[]> entries = new ArrayList<>();
+    try {
+      JSONObject files = new JSONObject(FileUtil.readAllText(manifestFile)).getJSONObject("files");
+      Iterator<String> paths = files.keys();
+      while (paths.hasNext()) {
+        String path = paths.next();
+        entries.add(new String[] { path, files.getString(path) });
+      }
+    } catch (Exception e) {
+      throw new IOException("Unreadable manifest in " + dir, e);
+    }
+    result.manifest = true;
+    result.files = entries.size();
+
+    AtomicInteger next = new AtomicInteger();
+    AtomicLong bytes = new AtomicLong();
+    List<String> corrupt = Collections.synchronizedList(new ArrayList<>());
+    Runnable worker = () -> {
+      byte[] buffer = new byte[64 * 1024];
+      for (int i = next.getAndIncrement(); i < entries.size(); i = next.getAndIncrement()) {
+        String[] entry = entries.get(i);
+        File file = new File(dir, entry[0]);
+        try {
+          if (!entry[1].equals(HashUtil.sha256(file, buffer))) {
+            corrupt.add(entry[0]);
+          }
+          bytes.addAndGet(file.length());
+        } catch (IOException e) {
+          // missing or unreadable counts as corrupt
+          corrupt.add(entry[0]);
+        }
+      }
+    };
+    int count = Math.max(1, Math.min(threads, entries.size()));
+    if (count == 1) {
+      worker.run();
+    } else {
+      ExecutorService pool = Executors.newFixedThreadPool(count);
+      try {
+        List<Future<?>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          futures.add(pool.submit(worker));
+        }
+        for (Future<?> future : futures) {
+          future.get();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Verification of " + dir + " interrupted", e);
+      } catch (ExecutionException e) {
+        throw new IOException(e.getCause());
+      } finally {
+        pool.shutdownNow();
+      }
+    }
+    Collections.sort(corrupt);
+    result.corrupt.addAll(corrupt);
+    result.bytes = bytes.get();
+    result.durationMs = (System.nanoTime() - start) / 1_000_000;
+    return result;
+  }
+}
@@ -0,0 +1,137 @@
+package io.mimiri.app;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Reads the files the WebView needs for its first paint (index.html and the scripts, styles and
+// preloads it references) once, so they are in the page cache when the bundle is switched to. Each
+// file is checked against the bundle's .manifest.json in the same read.
+class BundleWarmer {
+  static final String ASSETS = ".assets.json";
+  private static final String ENTRY = "index.html";
+  private static final Pattern REFERENCE = Pattern.compile("<(?:script|link)\\b[^>]*?\\b(?:src|href)\\s*=\\s*[\"']([^\"']+)[\"']", Pattern.CASE_INSENSITIVE);
+
+  static class Result {
+    final List<String> files = new ArrayList<>();
+    final List<String> corrupt = new ArrayList<>();
+    long bytes;
+    long durationMs;
+
+    JSObject toJson() {
+      JSObject result = new JSObject();
+      result.put("files", files.size());
+      result.put("bytes", bytes);
+      result.put("durationMs", durationMs);
+      result.put("corrupt", new JSArray(corrupt));
+      return result;
+    }
+  }
+
+  // writeAssets stores the list of first paint files in .assets.json so later warms skip parsing html
+  static Result warm(File dir, boolean writeAssets) throws IOException {
+    long start = System.nanoTime();
+    Result result = new Result();
+    JSONObject hashes = manifest(dir);
+    byte[] buffer = new byte[64 * 1024];
+    for (String path : criticalFiles(dir, writeAssets)) {
+      File file = new File(dir, path);
+      if (!file.isFile()) {
+        continue;
+      }
+      String hash = HashUtil.sha256(file, buffer);
+      result.bytes += file.length();
+      String expected = hashes != null ? hashes.optString(path, null) : null;
+      if (expected != null && !expected.equals(hash)) {
+        result.corrupt.add(path);
+      }
+      result.files.add(path);
+    }
+    result.durationMs = (System.nanoTime() - start) / 1_000_000;
+    return result;
+  }
+
+  private static JSONObject manifest(File dir) {
+    File manifest = new File(dir, BlobStore.MANIFEST);
+    if (!manifest.exists()) {
+      return null;
+    }
+    try {
+      return new JSONObject(FileUtil.readAllText(manifest)).getJSONObject("files");
+    } catch (Exception e) {
+      System.out.println(e.toString());
+      return null;
+    }
+  }
+
+  private static Set<String> criticalFiles(File dir, boolean writeAssets) throws IOException {
+    Set<String> files = new LinkedHashSet<>();
+    File assets = new File(dir, ASSETS);
+    if (assets.exists()) {
+      try {
+        JSONArray stored = new JSONObject(FileUtil.readAllText(assets)).getJSONArray("critical");
+        for (int i = 0; i < stored.length(); i++) {
+          files.add(stored.getString(i));
+        }
+        return files;
+      } catch (Exception e) {
+        System.out.println(e.toString());
+      }
+    }
+    files.add(ENTRY);
+    String html = FileUtil.readAllText(new File(dir, ENTRY));
+    if (html != null) {
+      Matcher matcher = REFERENCE.matcher(html);
+      while (matcher.find()) {
+        String path = local(matcher.group(1));
+        if (path != null) {
+          files.add(path);
+        }
+      }
+    }
+    if (writeAssets) {
+      try {
+        JSONObject stored = new JSONObject();
+        stored.put("critical", new JSONArray(files));
+        FileUtil.writeAtomic(assets, stored.toString());
+      } catch (JSONException e) {
+        System.out.println(e.toString());
+      }
+    }
+    return files;
+  }
+
+  // bundle relative path of a reference in index.html, null for remote or data urls
+  static String local(String reference) {
+    if (reference.startsWith("//") || reference.contains(":")) {
+      return null;
+    }
+    String path = reference;
+    int end = path.indexOf('?');
+    if (end < 0) {
+      end = path.indexOf('#');
+    }
+    if (end >= 0) {
+      path = path.substring(0, end);
+    }
+    while (path.startsWith("/") || path.startsWith("./")) {
+      path = path.substring(path.startsWith("/") ? 1 : 2);
+    }
+    if (path.isEmpty() || path.contains("..")) {
+      return null;
+    }
+    return path;
+  }
+}
@@ -0,0 +1,151 @@
+package io.mimiri.app;
+
+import com.getcapacitor.JSObject;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs cache work off the plugin thread. Reads share a small pool (WAL gives each its own connection),
+// writes go through a single thread so they are applied in the order the calls arrived. Writes name the
+// rows they touch, and a read of a row with a write still queued or running joins the write lane behind
+// it, so callers that do not await a setNote/deleteNote still read their own writes. Every other read,
+// including bulk reads and stream pages, stays on the read pool.
+class CacheExecutor {
+  static class Lane {
+    private final ExecutorService _executor;
+    private final AtomicInteger _queued = new AtomicInteger();
+    private final AtomicInteger _maxQueued = new AtomicInteger();
+    private final AtomicLong _completed = new AtomicLong();
+    private final AtomicLong _waitNanos = new AtomicLong();
+    private final AtomicLong _maxWaitNanos = new AtomicLong();
+
+    Lane(String name, int threads) {
+      AtomicInteger counter = new AtomicInteger();
+      _executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "mimiri-cache-" + name + "-" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+      ((ThreadPoolExecutor) _executor).allowCoreThreadTimeOut(true);
+    }
+
+    void submit(Runnable task) {
+      long enqueued = System.nanoTime();
+      int depth = _queued.incrementAndGet();
+      _maxQueued.accumulateAndGet(depth, Math::max);
+      _executor.execute(() -> {
+        long waited = System.nanoTime() - enqueued;
+        _queued.decrementAndGet();
+        _waitNanos.addAndGet(waited);
+        _maxWaitNanos.accumulateAndGet(waited, Math::max);
+        try {
+          task.run();
+        } catch (Exception e) {
+          System.out.println(e.toString());
+        } finally {
+          _completed.incrementAndGet();
+        }
+      });
+    }
+
+    JSObject metrics() {
+      long completed = _completed.get();
+      JSObject result = new JSObject();
+      result.put("queued", _queued.get());
+      result.put("maxQueued", _maxQueued.get());
+      result.put("completed", completed);
+      result.put("avgWaitMs", completed > 0 ? _waitNanos.get() / completed / 1e6 : 0.0);
+      result.put("maxWaitMs", _maxWaitNanos.get() / 1e6);
+      return result;
+    }
+
+    void reset() {
+      _maxQueued.set(_queued.get());
+      _completed.set(0);
+      _waitNanos.set(0);
+      _maxWaitNanos.set(0);
+    }
+
+    void shutdown() {
+      _executor.shutdown();
+    }
+  }
+
+  private final Lane _reads;
+  private final Lane _writes;
+  // row id -> writes submitted and not yet finished, counted before the write is queued so a read
+  // submitted after it always sees it
+  private final ConcurrentHashMap<String, Integer> _pendingWrites = new ConcurrentHashMap<>();
+
+  CacheExecutor() {
+    this(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)));
+  }
+
+  CacheExecutor(int readThreads) {
+    _reads = new Lane("read", readThreads);
+    _writes = new Lane("write", 1);
+  }
+
+  void read(Runnable task) {
+    _reads.submit(task);
+  }
+
+  void read(String id, Runnable task) {
+    read(Collections.singletonList(id), task);
+  }
+
+  void read(Collection<String> ids, Runnable task) {
+    for (String id : ids) {
+      if (_pendingWrites.containsKey(id)) {
+        _writes.submit(task);
+        return;
+      }
+    }
+    _reads.submit(task);
+  }
+
+  void write(String id, Runnable task) {
+    write(Collections.singletonList(id), task);
+  }
+
+  void write(Collection<String> ids, Runnable task) {
+    for (String id : ids) {
+      _pendingWrites.merge(id, 1, Integer::sum);
+    }
+    _writes.submit(() -> {
+      try {
+        task.run();
+      } finally {
+        for (String id : ids) {
+          _pendingWrites.computeIfPresent(id, (key, count) -> count > 1 ? count - 1 : null);
+        }
+      }
+    });
+  }
+
+  JSObject metrics() {
+    JSObject result = new JSObject();
+    result.put("reads", _reads.metrics());
+    result.put("writes", _writes.metrics());
+    return result;
+  }
+
+  void resetMetrics() {
+    _reads.reset();
+    _writes.reset();
+  }
+
+  // Returns at once, queued work still runs so pending writes are not lost when the bridge goes away.
+  // The lane threads exit once their queues are empty.
+  void shutdown() {
+    _reads.shutdown();
+    _writes.shutdown();
+  }
+}
@@ -3,6 +3,7 @@ package io.mimiri.app;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
@@ -13,263 +14,752 @@ import com.getcapacitor.annotation.CapacitorPlugin;
 
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.DataFormatException;
 
 @CapacitorPlugin(name = "Cache")
 public class CachePlugin extends Plugin {
+  private final PluginMetrics _metrics = PluginMetrics.forPlugin("Cache");
   public static MimiriDatabase database;
+  public static PayloadCache memoryCache;
+  // stays below SQLITE_MAX_VARIABLE_NUMBER on older Android builds (999)
+  private static final int MAX_BATCH_PARAMS = 500;
+  private static final int DEFAULT_PAGE_ROWS = 200;
+  private static final int MAX_PAGE_ROWS = 1000;
+  private static final int MAX_PAGE_BYTES = 1024 * 1024;
+  private static final int DECRYPT_THREADS = Runtime.getRuntime().availableProcessors();
+  private static final String[] USER_KEYS = { "username" };
+  private static final String[] USER_VALUES = { "data", "pre_login" };
+  private static final String[] KEY_KEYS = { "id", "user_id" };
+  private static final String[] KEY_VALUES = { "data" };
+  private static final String[] NOTE_KEYS = { "id" };
+  private static final String[] NOTE_VALUES = { "data", "format" };
+
+  private CacheExecutor _executor;
+  private NoteCodec _noteCodec;
+
+  // Note compression is set in capacitor.config under plugins.Cache: compressNotes (default true) and
+  // compressMinChars (default 2048). Rows already stored keep their format either way.
+  @Override
+  public void load() {
+    _executor = new CacheExecutor();
+    boolean compress = getConfig().getBoolean("compressNotes", true);
+    _noteCodec = compress ? new NoteCodec(true, getConfig().getInt("compressMinChars", 2048)) : NoteCodec.PLAIN;
+  }
+
+  @Override
+  protected void handleOnDestroy() {
+    _executor.shutdown();
+  }
 
   @PluginMethod()
   public void getPreLogin(PluginCall call) {
-    try {
-      //System.out.println("getPreLogin called " + call.getData().toString(2));
-      try (SQLiteDatabase db = database.getReadableDatabase()) {
+    PluginMetrics.Span span = _metrics.start(call);
+    _executor.read(row("user", call.getString("username")), () -> {
+      try {
+        //System.out.println("getPreLogin called " + call.getData().toString(2));
+        SQLiteDatabase db = database.open();
         try (Cursor reader = db.rawQuery("SELECT pre_login FROM mimer_user WHERE username = ?", new String[]{call.getString("username")})) {
           if (reader.moveToFirst()) {
-            call.resolve(new JSObject(reader.getString(0)));
+            span.rows(1);
+            resolvePayload(span, reader.getString(0));
             return;
           }
         }
+      } catch (Exception e) {
+        span.error(e);
       }
-    } catch (Exception e) {
-      System.out.println(e.toString());
-    }
-    call.resolve();
+      span.resolve();
+    });
   }
 
   @PluginMethod()
   public void getUser(PluginCall call) {
-    try {
-      //System.out.println("getUser called " + call.getData().toString(2));
-      try (SQLiteDatabase db = database.getReadableDatabase()) {
+    PluginMetrics.Span span = _metrics.start(call);
+    _executor.read(row("user", call.getString("username")), () -> {
+      try {
+        //System.out.println("getUser called " + call.getData().toString(2));
+        SQLiteDatabase db = database.open();
         try (Cursor reader = db.rawQuery("SELECT data FROM mimer_user WHERE username = ?", new String[]{call.getString("username")})) {
           if (reader.moveToFirst()) {
-            call.resolve(new JSObject(reader.getString(0)));
+            span.rows(1);
+            resolvePayload(span, reader.getString(0));
             return;
           }
         }
+      } catch (Exception e) {
+        span.error(e);
       }
-    } catch (Exception e) {
-      System.out.println(e.toString());
-    }
-    call.resolve();
+      span.resolve();
+    });
   }
 
   @PluginMethod()
   public void setUser(PluginCall call) {
-    try {
-      //System.out.println("setUser called " + call.getData().toString(2));
-      String username = call.getString("username");
-      String data = call.getObject("data").toString();
-      String preLogin = call.getObject("preLogin").toString();
-
-      try (SQLiteDatabase db = database.getWritableDatabase()) {
-        try (Cursor reader = db.rawQuery("SELECT data, pre_login FROM mimer_user WHERE username = ?", new String[] { username })) {
-          if (reader.moveToFirst()) {
-            String dataDb = reader.getString(0);
-            String preLoginDb = reader.getString(1);
-            if (data.equals(dataDb) && preLogin.equals(preLoginDb)) {
-              call.resolve();
-              return;
-            }
-          }
-        }
-        ContentValues values = new ContentValues();
-        values.put("data", data);
-        values.put("pre_login", preLogin);
-        if (db.update("mimer_user", values, "username = ?", new String[]{ username}) == 0) {
-          values.put("username", username);
-          db.insert("mimer_user", null, values);
+    PluginMetrics.Span span = _metrics.start(call);
+    _executor.write(row("user", call.getString("username")), () -> {
+      try {
+        //System.out.println("setUser called " + call.getData().toString(2));
+        String username = call.getString("username");
+        String data = jsonText(span, call.getData(), "data");
+        String preLogin = jsonText(span, call.getData(), "preLogin");
+
+        SQLiteDatabase db = database.open();
+        try (UpsertStatement upsert = new UpsertStatement(db, "mimer_user", USER_KEYS, USER_VALUES)) {
+          upsert.execute(new String[] { username }, new String[] { data, preLogin });
+          span.rows(1);
         }
+      } catch (Exception e) {
+        span.error(e);
       }
-    } catch (Exception e) {
-      System.out.println(e.toString());
-    }
-    call.resolve();
+      span.resolve();
+    });
   }
 
   @PluginMethod()
   public void deleteUser(PluginCall call) {
-    try {
-      //System.out.println("deleteUser called " + call.getData().toString(2));
-      String username = call.getString("username");
-      try (SQLiteDatabase db = database.getWritableDatabase()) {
-        db.delete("mimer_user", "username = ?", new String[]{ username});
+    PluginMetrics.Span span = _metrics.start(call);
+    _executor.write(row("user", call.getString("username")), () -> {
+      try {
+        //System.out.println("deleteUser called " + call.getData().toString(2));
+        String username = call.getString("username");
+        SQLiteDatabase db = database.open();
+        span.rows(db.delete("mimer_user", "username = ?", new String[]{ username}));
+        // keys are stored by user id rather than username, so drop everything cached for safety
+        memoryCache.clear();
+      } catch (Exception e) {
+        span.error(e);
       }
-    } catch (Exception e) {
-      System.out.println(e.toString());
-    }
-    call.resolve();
+      span.resolve();
+    });
   }
 
   @PluginMethod()
   public void setUserData(PluginCall call) {
-    try {
-      //System.out.println("setUserData called " + call.getData().toString(2));
-      String username = call.getString("username");
-      String data = call.getObject("data").toString();
-      try (SQLiteDatabase db = database.getWritableDatabase()) {
+    PluginMetrics.Span span = _metrics.start(call);
+    _executor.write(row("user", call.getString("username")), () -> {
+      try {
+        //System.out.println("setUserData called " + call.getData().toString(2));
+        String username = call.getString("username");
+        String data = jsonText(span, call.getData(), "data");
+        SQLiteDatabase db = database.open();
         ContentValues values = new ContentValues();
         values.put("data", data);
-        db.update("mimer_user", values, "username = ?", new String[]{ username});
+        // the stored hash covers data and pre_login together, so it is invalid after a partial update
+        values.putNull("hash");
+        span.rows(db.update("mimer_user", values, "username = ?", new String[]{ username}));
+      } catch (Exception e) {
+        span.error(e);
       }
-    } catch (Exception e) {
-      System.out.println(e.toString());
-    }
-    call.resolve();
+      span.resolve();
+    });
   }
 
   @PluginMethod()
   public void getKey(PluginCall call) {
-    try {
-      //System.out.println("getKey called " + call.getData().toString(2));
-      String userId = call.getString("userId");
-      String id = call.getString("id");
-      try (SQLiteDatabase db = database.getReadableDatabase()) {
+    PluginMetrics.Span span = _metrics.start(call);
+    _executor.read(row("key", call.getString("id")), () -> {
+      try {
+        //System.out.println("getKey called " + call.getData().toString(2));
+        String userId = call.getString("userId");
+        String id = call.getString("id");
+        String cached = memoryCache.getKey(userId, id);
+        if (cached != null) {
+          resolvePayload(span, cached);
+          return;
+        }
+        long stamp = memoryCache.stamp();
+        SQLiteDatabase db = database.open();
         try (Cursor reader = db.rawQuery("SELECT data FROM mimer_key WHERE user_id = ? AND id = ?", new String[] { userId, id })) {
           if (reader.moveToFirst()) {
-            call.resolve(new JSObject(reader.getString(0)));
+            String data = reader.getString(0);
+            memoryCache.fillKey(userId, id, data, stamp);
+            span.rows(1);
+            resolvePayload(span, data);
             return;
           }
         }
+      } catch (Exception e) {
+        span.error(e);
       }
-    } catch (Exception e) {
-      System.out.println(e.toString());
-    }
-    call.resolve();
+      span.resolve();
+    });
   }
 
   @PluginMethod()
   public void getAllKeys(PluginCall call) {
-    try {
-      //System.out.println("getAllKeys called " + call.getData().toString(2));
-      String userId = call.getString("userId");
-      JSArray keys = new JSArray();
-      try (SQLiteDatabase db = database.getReadableDatabase()) {
+    PluginMetrics.Span span = _metrics.start(call);
+    _executor.read(() -> {
+      try {
+        //System.out.println("getAllKeys called " + call.getData().toString(2));
+        String userId = call.getString("userId");
+        SQLiteDatabase db = database.open();
+        if (call.getData().has("limit") || call.getData().has("after")) {
+          span.resolve(readPage(db, span, "mimer_key", "0", userId, "keys", false));
+          return;
+        }
+        boolean raw = isRaw(call);
+        JSArray keys = new JSArray();
         try (Cursor reader = db.rawQuery("SELECT data FROM mimer_key WHERE user_id = ?", new String[] { userId })) {
           if (reader.moveToFirst()) {
             do {
-              keys.put(new JSObject(reader.getString(0)));
+              String data = reader.getString(0);
+              span.rows(1);
+              span.bytes(data);
+              keys.put(payload(data, raw));
             }
             while (reader.moveToNext());
           }
         }
+        JSObject result = new JSObject();
+        result.put("keys", keys);
+        span.resolve(result);
+        return;
+      } catch (Exception e) {
+        span.error(e);
       }
-      JSObject result = new JSObject();
-      result.put("keys", keys);
-      call.resolve(result);
-    } catch (Exception e) {
-      System.out.println(e.toString());
-    }
-    call.resolve();
+      span.resolve();
+    });
+  }
+
+  @PluginMethod()
+  public void getAllNotes(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    _executor.read(() -> {
+      try {
+        SQLiteDatabase db = database.open();
+        span.resolve(readPage(db, span, "mimer_note", "format", null, "notes", true));
+        return;
+      } catch (Exception e) {
+        span.error(e);
+      }
+      span.resolve();
+    });
   }
 
   @PluginMethod()
   public void setKey(PluginCall call) {
-    try {
-      //System.out.println("setKey called " + call.getData().toString(2));
-      String userId = call.getString("userId");
-      String id = call.getString("id");
-      String data = call.getObject("data").toString();
+    PluginMetrics.Span span = _metrics.start(call);
+    _executor.write(row("key", call.getString("id")), () -> {
+      try {
+        //System.out.println("setKey called " + call.getData().toString(2));
+        String userId = call.getString("userId");
+        String id = call.getString("id");
+        String data = jsonText(span, call.getData(), "data");
 
-      try (SQLiteDatabase db = database.getWritableDatabase()) {
-        try (Cursor reader = db.rawQuery("SELECT data FROM mimer_key WHERE user_id = ? AND id = ?", new String[] { userId, id })) {
-          if (reader.moveToFirst()) {
-            String dataDb = reader.getString(0);
-            if (data.equals(dataDb)) {
-              call.resolve();
-              return;
-            }
-          }
-        }
-        ContentValues values = new ContentValues();
-        values.put("data", data);
-        if (db.update("mimer_key", values, "user_id = ? AND id = ?", new String[]{ userId, id }) == 0) {
-          values.put("user_id", userId);
-          values.put("id", id);
-          db.insert("mimer_key", null, values);
+        SQLiteDatabase db = database.open();
+        try (UpsertStatement upsert = new UpsertStatement(db, "mimer_key", KEY_KEYS, KEY_VALUES)) {
+          upsert.execute(new String[] { id, userId }, new String[] { data });
+          span.rows(1);
         }
+        // invalidate rather than write through, the upsert is skipped when the id belongs to another user
+        memoryCache.removeKey(id);
+      } catch (Exception e) {
+        span.error(e);
       }
-    } catch (Exception e) {
-      System.out.println(e.toString());
-    }
-    call.resolve();
+      span.resolve();
+    });
   }
 
   @PluginMethod()
   public void deleteKey(PluginCall call) {
-    try {
-      //System.out.println("deleteKey called " + call.getData().toString(2));
-      String id = call.getString("id");
-      try (SQLiteDatabase db = database.getWritableDatabase()) {
-        db.delete("mimer_key", "id = ?", new String[]{ id });
+    PluginMetrics.Span span = _metrics.start(call);
+    _executor.write(row("key", call.getString("id")), () -> {
+      try {
+        //System.out.println("deleteKey called " + call.getData().toString(2));
+        String userId = call.getString("userId");
+        String id = call.getString("id");
+        SQLiteDatabase db = database.open();
+        if (userId != null) {
+          span.rows(db.delete("mimer_key", "user_id = ? AND id = ?", new String[]{ userId, id }));
+        } else {
+          span.rows(db.delete("mimer_key", "id = ?", new String[]{ id }));
+        }
+        memoryCache.removeKey(id);
+      } catch (Exception e) {
+        span.error(e);
       }
-    } catch (Exception e) {
-      System.out.println(e.toString());
-    }
-    call.resolve();
+      span.resolve();
+    });
   }
 
   @PluginMethod()
   public void getNote(PluginCall call) {
-    try {
-      //System.out.println("getNote called " + call.getData().toString(2));
-      String id = call.getString("id");
-      try (SQLiteDatabase db = database.getReadableDatabase()) {
-        try (Cursor reader = db.rawQuery("SELECT data FROM mimer_note WHERE id = ?", new String[] { id })) {
+    PluginMetrics.Span span = _metrics.start(call);
+    _executor.read(row("note", call.getString("id")), () -> {
+      try {
+        //System.out.println("getNote called " + call.getData().toString(2));
+        String id = call.getString("id");
+        String cached = memoryCache.getNote(id);
+        if (cached != null) {
+          resolvePayload(span, cached);
+          return;
+        }
+        long stamp = memoryCache.stamp();
+        SQLiteDatabase db = database.open();
+        try (Cursor reader = db.rawQuery("SELECT data, format FROM mimer_note WHERE id = ?", new String[] { id })) {
           if (reader.moveToFirst()) {
-            call.resolve(new JSObject(reader.getString(0)));
+            String data = NoteCodec.decode(reader, 0, 1);
+            memoryCache.fillNote(id, data, stamp);
+            span.rows(1);
+            resolvePayload(span, data);
             return;
           }
         }
+      } catch (Exception e) {
+        span.error(e);
       }
-    } catch (Exception e) {
-      System.out.println(e.toString());
-    }
-    call.resolve();
+      span.resolve();
+    });
   }
 
   @PluginMethod()
   public void setNote(PluginCall call) {
-    try {
-      // System.out.println("setNote called " + call.getData().toString(2));
-      String id = call.getString("id");
-      String data = call.getObject("data").toString();
+    PluginMetrics.Span span = _metrics.start(call);
+    _executor.write(row("note", call.getString("id")), () -> {
+      try {
+        // System.out.println("setNote called " + call.getData().toString(2));
+        String id = call.getString("id");
+        String data = jsonText(span, call.getData(), "data");
 
-      try (SQLiteDatabase db = database.getWritableDatabase()) {
-        try (Cursor reader = db.rawQuery("SELECT data FROM mimer_note WHERE id =?", new String[] { id })) {
-          if (reader.moveToFirst()) {
-            String dataDb = reader.getString(0);
-            if (data.equals(dataDb)) {
-    					call.resolve();
-              return;
+        SQLiteDatabase db = database.open();
+        try (UpsertStatement upsert = new UpsertStatement(db, "mimer_note", NOTE_KEYS, NOTE_VALUES)) {
+          NoteCodec.Encoded encoded = _noteCodec.encode(data);
+          upsert.execute(new String[] { id }, new Object[] { encoded.data, encoded.format }, HashUtil.sha256(data));
+          span.rows(1);
+        }
+        memoryCache.putNote(id, data);
+      } catch (Exception e) {
+        span.error(e);
+      }
+      span.resolve();
+    });
+  }
+
+  @PluginMethod()
+  public void deleteNote(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    _executor.write(row("note", call.getString("id")), () -> {
+      try {
+        //System.out.println("deleteNote called " + call.getData().toString(2));
+        String id = call.getString("id");
+        SQLiteDatabase db = database.open();
+        span.rows(db.delete("mimer_note", "id = ?", new String[]{ id }));
+        memoryCache.removeNote(id);
+      } catch (Exception e) {
+        span.error(e);
+      }
+      span.resolve();
+    });
+  }
+
+  @PluginMethod()
+  public void getNotes(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    _executor.read(rows("note", call.getArray("ids", new JSArray()), null), () -> {
+      try {
+        JSArray ids = call.getArray("ids", new JSArray());
+        boolean raw = isRaw(call);
+        JSArray notes = new JSArray();
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < ids.length(); i++) {
+          String id = ids.getString(i);
+          String cached = memoryCache.getNote(id);
+          if (cached != null) {
+            JSObject note = new JSObject();
+            note.put("id", id);
+            note.put("data", payload(cached, raw));
+            notes.put(note);
+          } else {
+            missing.add(id);
+          }
+        }
+        long stamp = memoryCache.stamp();
+        SQLiteDatabase db = database.open();
+        for (int offset = 0; offset < missing.size(); offset += MAX_BATCH_PARAMS) {
+          int count = Math.min(MAX_BATCH_PARAMS, missing.size() - offset);
+          String[] args = missing.subList(offset, offset + count).toArray(new String[0]);
+          try (Cursor reader = db.rawQuery("SELECT id, data, format FROM mimer_note WHERE id IN (" + placeholders(count) + ")", args)) {
+            while (reader.moveToNext()) {
+              String id = reader.getString(0);
+              String data = NoteCodec.decode(reader, 1, 2);
+              span.rows(1);
+              span.bytes(data);
+              memoryCache.fillNote(id, data, stamp);
+              JSObject note = new JSObject();
+              note.put("id", id);
+              note.put("data", payload(data, raw));
+              notes.put(note);
             }
           }
         }
-        ContentValues values = new ContentValues();
-        values.put("data", data);
-        if (db.update("mimer_note", values, "id = ?", new String[]{ id }) == 0) {
-          values.put("id", id);
-          db.insert("mimer_note", null, values);
+        JSObject result = new JSObject();
+        result.put("notes", notes);
+        span.resolve(result);
+        return;
+      } catch (Exception e) {
+        span.error(e);
+      }
+      span.resolve();
+    });
+  }
+
+  @PluginMethod()
+  public void setNotes(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    _executor.write(rows("note", call.getArray("notes", new JSArray()), "id"), () -> {
+      try {
+        JSArray notes = call.getArray("notes", new JSArray());
+        String[] ids = new String[notes.length()];
+        String[] datas = new String[notes.length()];
+        SQLiteDatabase db = database.open();
+        db.beginTransaction();
+        try (UpsertStatement upsert = new UpsertStatement(db, "mimer_note", NOTE_KEYS, NOTE_VALUES)) {
+          for (int i = 0; i < notes.length(); i++) {
+            JSONObject note = notes.getJSONObject(i);
+            ids[i] = note.getString("id");
+            datas[i] = jsonText(span, note, "data");
+            NoteCodec.Encoded encoded = _noteCodec.encode(datas[i]);
+            upsert.execute(new String[] { ids[i] }, new Object[] { encoded.data, encoded.format }, HashUtil.sha256(datas[i]));
+          }
+          span.rows(notes.length());
+          db.setTransactionSuccessful();
+        } finally {
+          db.endTransaction();
+        }
+        // only reached when the transaction committed
+        for (int i = 0; i < ids.length; i++) {
+          memoryCache.putNote(ids[i], datas[i]);
         }
+      } catch (Exception e) {
+        span.error(e);
       }
-    } catch (Exception e) {
-      System.out.println(e.toString());
+      span.resolve();
+    });
+  }
+
+  @PluginMethod()
+  public void deleteNotes(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    _executor.write(rows("note", call.getArray("ids", new JSArray()), null), () -> {
+      try {
+        JSArray ids = call.getArray("ids", new JSArray());
+        SQLiteDatabase db = database.open();
+        db.beginTransaction();
+        try (SQLiteStatement delete = db.compileStatement("DELETE FROM mimer_note WHERE id = ?")) {
+          for (int i = 0; i < ids.length(); i++) {
+            delete.bindString(1, ids.getString(i));
+            span.rows(delete.executeUpdateDelete());
+          }
+          db.setTransactionSuccessful();
+        } finally {
+          db.endTransaction();
+        }
+        for (int i = 0; i < ids.length(); i++) {
+          memoryCache.removeNote(ids.getString(i));
+        }
+      } catch (Exception e) {
+        span.error(e);
+      }
+      span.resolve();
+    });
+  }
+
+  @PluginMethod()
+  public void setKeys(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    _executor.write(rows("key", call.getArray("keys", new JSArray()), "id"), () -> {
+      try {
+        String userId = call.getString("userId");
+        JSArray keys = call.getArray("keys", new JSArray());
+        SQLiteDatabase db = database.open();
+        db.beginTransaction();
+        try (UpsertStatement upsert = new UpsertStatement(db, "mimer_key", KEY_KEYS, KEY_VALUES)) {
+          for (int i = 0; i < keys.length(); i++) {
+            JSONObject key = keys.getJSONObject(i);
+            upsert.execute(new String[] { key.getString("id"), userId }, new String[] { jsonText(span, key, "data") });
+          }
+          span.rows(keys.length());
+          db.setTransactionSuccessful();
+        } finally {
+          db.endTransaction();
+        }
+        for (int i = 0; i < keys.length(); i++) {
+          memoryCache.removeKey(keys.getJSONObject(i).getString("id"));
+        }
+      } catch (Exception e) {
+        span.error(e);
+      }
+      span.resolve();
+    });
+  }
+
+  // Streams every cached note (or only "ids") back with its items decrypted, one callback per page and a
+  // final one with done set. Keys come from the web layer for the session: "keys" as
+  // [{ name, algorithm, key }] with base64 raw keys, and/or "rootKey" { algorithm, key } with "userId"
+  // to unwrap that user's mimer_key rows natively. Explicit keys win over unwrapped ones. Every page is
+  // its own read task, so a large stream never holds a read thread for long and queued writes go first.
+  @PluginMethod(returnType = PluginMethod.RETURN_CALLBACK)
+  public void decryptNotes(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    call.setKeepAlive(true);
+    _executor.read(() -> {
+      DecryptStream stream = new DecryptStream(span);
+      try {
+        SQLiteDatabase db = database.open();
+        JSObject root = call.getObject("rootKey");
+        if (root != null) {
+          NoteDecryptor.Key rootKey = new NoteDecryptor.Key(root.getString("algorithm"), Base64.getDecoder().decode(root.getString("key")));
+          try (Cursor reader = db.rawQuery("SELECT data FROM mimer_key WHERE user_id = ?", new String[] { call.getString("userId") })) {
+            while (reader.moveToNext()) {
+              span.rows(1);
+              try {
+                stream.decryptor.addKeyData(reader.getString(0), rootKey);
+              } catch (Exception e) {
+                span.error(e);
+              }
+            }
+          }
+        }
+        JSArray keys = call.getArray("keys", new JSArray());
+        for (int i = 0; i < keys.length(); i++) {
+          JSONObject key = keys.getJSONObject(i);
+          stream.decryptor.addKey(key.getString("name"), new NoteDecryptor.Key(key.getString("algorithm"), Base64.getDecoder().decode(key.getString("key"))));
+        }
+      } catch (Exception e) {
+        stream.fail(e);
+        return;
+      }
+      stream.next();
+    });
+  }
+
+  // paging state of one decryptNotes call, carried from one read task to the next
+  private class DecryptStream {
+    final PluginMetrics.Span span;
+    final NoteDecryptor decryptor = new NoteDecryptor(DECRYPT_THREADS);
+    final JSArray ids;
+    final int limit;
+    final long start = System.nanoTime();
+    int total = 0;
+    String after = "";
+    int offset = 0;
+
+    DecryptStream(PluginMetrics.Span span) {
+      this.span = span;
+      PluginCall call = span.call();
+      ids = call.getArray("ids");
+      limit = Math.max(1, Math.min(MAX_PAGE_ROWS, call.getInt("limit", DEFAULT_PAGE_ROWS)));
+    }
+
+    // resolves one non-empty page and queues the following one, or finishes the stream
+    void next() {
+      try {
+        SQLiteDatabase db = database.open();
+        while (true) {
+          String sql;
+          String[] args;
+          if (ids != null) {
+            int count = Math.min(Math.min(limit, MAX_BATCH_PARAMS), ids.length() - offset);
+            if (count <= 0) {
+              break;
+            }
+            args = new String[count];
+            for (int i = 0; i < count; i++) {
+              args[i] = ids.getString(offset + i);
+            }
+            offset += count;
+            sql = "SELECT id, data, format FROM mimer_note WHERE id IN (" + placeholders(count) + ")";
+          } else {
+            sql = "SELECT id, data, format FROM mimer_note WHERE id > ? ORDER BY id LIMIT " + limit;
+            args = new String[] { after };
+          }
+          List<String> page = new ArrayList<>();
+          try (Cursor reader = db.rawQuery(sql, args)) {
+            while (reader.moveToNext()) {
+              after = reader.getString(0);
+              page.add(NoteCodec.decode(reader, 1, 2));
+            }
+          }
+          if (page.isEmpty()) {
+            if (ids == null) {
+              break;
+            }
+            continue;
+          }
+          total += page.size();
+          span.rows(page.size());
+          JSObject result = new JSObject();
+          result.put("notes", new JSArray(decryptor.decryptNotes(page)));
+          result.put("done", false);
+          span.resolve(result);
+          _executor.read(this::next);
+          return;
+        }
+        JSObject result = new JSObject();
+        result.put("notes", new JSArray());
+        result.put("done", true);
+        result.put("count", total);
+        result.put("durationMs", (System.nanoTime() - start) / 1_000_000);
+        span.resolve(result);
+        finish();
+      } catch (Exception e) {
+        fail(e);
+      }
+    }
+
+    void fail(Exception e) {
+      span.error(e);
+      span.reject(e.toString());
+      finish();
+    }
+
+    private void finish() {
+      decryptor.close();
+      span.release(getBridge());
     }
-    call.resolve();
   }
 
   @PluginMethod()
-  public void deleteNote(PluginCall call) {
-    try {
-      //System.out.println("deleteNote called " + call.getData().toString(2));
-      String id = call.getString("id");
-      try (SQLiteDatabase db = database.getWritableDatabase()) {
-        db.delete("mimer_note", "id = ?", new String[]{ id });
+  public void getQueueMetrics(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    span.resolve(_executor.metrics());
+  }
+
+  @PluginMethod()
+  public void resetQueueMetrics(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    _executor.resetMetrics();
+    span.resolve();
+  }
+
+  @PluginMethod()
+  public void getMemoryCacheStats(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    span.resolve(memoryCache.stats());
+  }
+
+  @PluginMethod()
+  public void resetMemoryCacheStats(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    memoryCache.resetStats();
+    span.resolve();
+  }
+
+  // Keyset paging ordered by id: "next" is the value to pass as "after" for the following page and is
+  // omitted on the last page. A page ends at "limit" rows or once "maxBytes" of payload has been read.
+  private static JSObject readPage(SQLiteDatabase db, PluginMetrics.Span span, String table, String formatColumn, String userId, String arrayName, boolean withId) throws JSONException, DataFormatException {
+    PluginCall call = span.call();
+    String after = call.getString("after", "");
+    int limit = Math.max(1, Math.min(MAX_PAGE_ROWS, call.getInt("limit", DEFAULT_PAGE_ROWS)));
+    int maxBytes = Math.max(1, Math.min(MAX_PAGE_BYTES, call.getInt("maxBytes", MAX_PAGE_BYTES)));
+    String sql;
+    String[] args;
+    if (userId != null) {
+      sql = "SELECT id, data, " + formatColumn + " FROM " + table + " WHERE user_id = ? AND id > ? ORDER BY id LIMIT " + limit;
+      args = new String[] { userId, after };
+    } else {
+      sql = "SELECT id, data, " + formatColumn + " FROM " + table + " WHERE id > ? ORDER BY id LIMIT " + limit;
+      args = new String[] { after };
+    }
+    boolean raw = isRaw(call);
+    JSArray items = new JSArray();
+    String lastId = null;
+    int rows = 0;
+    long bytes = 0;
+    boolean more = false;
+    try (Cursor reader = db.rawQuery(sql, args)) {
+      while (reader.moveToNext()) {
+        if (rows > 0 && bytes >= maxBytes) {
+          more = true;
+          break;
+        }
+        lastId = reader.getString(0);
+        String data = NoteCodec.decode(reader, 1, 2);
+        bytes += PluginMetrics.utf8Length(data);
+        rows++;
+        if (withId) {
+          JSObject item = new JSObject();
+          item.put("id", lastId);
+          item.put("data", payload(data, raw));
+          items.put(item);
+        } else {
+          items.put(payload(data, raw));
+        }
+      }
+    }
+    span.rows(rows);
+    span.bytes(bytes);
+    JSObject result = new JSObject();
+    result.put(arrayName, items);
+    if (more || rows == limit) {
+      result.put("next", lastId);
+    }
+    return result;
+  }
+
+  // In raw mode stored JSON text goes to the bridge as a string and is never parsed on this side,
+  // the web layer runs JSON.parse on it instead.
+  private static boolean isRaw(PluginCall call) {
+    return Boolean.TRUE.equals(call.getBoolean("raw", false));
+  }
+
+  private static Object payload(String json, boolean raw) throws JSONException {
+    return raw ? json : new JSObject(json);
+  }
+
+  private static void resolvePayload(PluginMetrics.Span span, String json) throws JSONException {
+    span.bytes(json);
+    if (isRaw(span.call())) {
+      JSObject result = new JSObject();
+      result.put("json", json);
+      span.resolve(result);
+    } else {
+      span.resolve(new JSObject(json));
+    }
+  }
+
+  // Writers may send a payload as JSON.stringify output, which is stored as it arrives
+  // instead of being parsed into a JSObject by the bridge and serialized again here.
+  private static String jsonText(PluginMetrics.Span span, JSONObject source, String name) throws JSONException {
+    Object value = source.get(name);
+    String text = value instanceof String ? (String) value : value.toString();
+    span.bytes(text);
+    return text;
+  }
+
+  // Row ids the executor tracks pending writes by, namespaced by table.
+  private static String row(String table, String id) {
+    return table + ":" + id;
+  }
+
+  // field names the id inside each item, null when the items are the ids themselves
+  private static List<String> rows(String table, JSArray items, String field) {
+    List<String> result = new ArrayList<>(items.length());
+    for (int i = 0; i < items.length(); i++) {
+      if (field == null) {
+        result.add(row(table, items.optString(i)));
+      } else {
+        JSONObject item = items.optJSONObject(i);
+        result.add(row(table, item != null ? item.optString(field) : null));
+      }
+    }
+    return result;
+  }
+
+  private static String placeholders(int count) {
+    StringBuilder result = new StringBuilder(count * 2);
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        result.append(',');
       }
-    } catch (Exception e) {
-      System.out.println(e.toString());
+      result.append('?');
     }
-    call.resolve();
+    return result.toString();
   }
 
 }
@@ -2,25 +2,30 @@ package io.mimiri.app;
 
 import com.getcapacitor.JSObject;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.Objects;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 
+// File I/O shared by the plugins: whole file reads in one call, compact JSON, and writes that are
+// fsynced and renamed into place so readers never see a partial file.
 public class FileUtil {
 
+  public static byte[] readAllBytes(File file) throws IOException {
+    return Files.readAllBytes(file.toPath());
+  }
+
   public static String readAllText(File file) {
     try {
-      StringBuilder data = new StringBuilder();
-      BufferedReader reader = new BufferedReader(new FileReader(file));
-      String line = reader.readLine();
-      while (line != null) {
-        data.append(line);
-        line = reader.readLine();
-      }
-      return data.toString();
+      return new String(readAllBytes(file), StandardCharsets.UTF_8);
     } catch (Exception e) {
       System.out.println(e.toString());
     }
@@ -29,14 +34,7 @@ public class FileUtil {
 
   public static JSObject readJson(File file) {
     try {
-      StringBuilder data = new StringBuilder();
-      BufferedReader reader = new BufferedReader(new FileReader(file));
-      String line = reader.readLine();
-      while (line != null) {
-        data.append(line);
-        line = reader.readLine();
-      }
-      return new JSObject(data.toString());
+      return new JSObject(new String(readAllBytes(file), StandardCharsets.UTF_8));
     } catch (Exception e) {
       System.out.println(e.toString());
     }
@@ -45,30 +43,96 @@ public class FileUtil {
 
   public static void writeJson(File file, JSObject json) {
     try {
-      try (PrintWriter out = new PrintWriter(file)) {
-        out.println(json.toString(2));
-      }
+      writeAtomic(file, json.toString());
     } catch (Exception e) {
       System.out.println(e.toString());
     }
   }
 
-  private static void recursiveDelete(File dir) {
+  public static void writeAtomic(File file, String text) throws IOException {
+    writeAtomic(file, text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  // Writes to a temp file next to the target, fsyncs it and renames it over the target, so a crash
+  // leaves either the old or the new content and never a truncated file. The temp name is unique,
+  // so concurrent writers of one file cannot interleave inside it.
+  public static void writeAtomic(File file, byte[] data) throws IOException {
+    Path temp = Files.createTempFile(file.getParentFile().toPath(), "." + file.getName() + ".", ".tmp");
     try {
-      if (dir.isDirectory()) {
-        for (File file : Objects.requireNonNull(dir.listFiles())) {
-          recursiveDelete(file);
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
         }
+        channel.force(true);
       }
-      if (dir.delete()) {
-        System.out.println("Failed to delete dir");
-      }
-    } catch (Exception e) {
+      Files.move(temp, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      Files.deleteIfExists(temp);
+      throw e;
+    }
+    syncDir(file.getParentFile());
+  }
+
+  // makes renames and creations inside dir durable, best effort where directories cannot be opened
+  public static void syncDir(File dir) {
+    try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
       System.out.println(e.toString());
     }
   }
+
+  public static long size(File file) {
+    if (!file.isDirectory()) {
+      return file.length();
+    }
+    long total = 0;
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        total += size(child);
+      }
+    }
+    return total;
+  }
+
+  // does not follow symbolic links, keeps going past entries it cannot delete
   public static void deleteDir(File dir) {
-    recursiveDelete(dir);
+    if (!dir.exists()) {
+      return;
+    }
+    try {
+      Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+          delete(file);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+          System.out.println(e.toString());
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+          delete(dir);
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (IOException e) {
+      System.out.println(e.toString());
+    }
+  }
+
+  private static void delete(Path path) {
+    try {
+      Files.delete(path);
+    } catch (IOException e) {
+      System.out.println("Failed to delete " + path + ": " + e);
+    }
   }
 
 }
@@ -0,0 +1,178 @@
+package io.mimiri.app;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Push-style gunzip: compressed bytes arrive in arbitrary pieces and the inflated output is written
+// straight to the target stream, so memory use stays at the size of one piece plus a fixed buffer.
+// The output is hashed with SHA-256 on the way through.
+class GzipStreamWriter implements Closeable {
+  private static final int FHCRC = 2;
+  private static final int FEXTRA = 4;
+  private static final int FNAME = 8;
+  private static final int FCOMMENT = 16;
+
+  private final OutputStream _out;
+  private final FileOutputStream _file;
+  private final Inflater _inflater = new Inflater(true);
+  private final CRC32 _crc = new CRC32();
+  private final MessageDigest _digest = HashUtil.sha256();
+  private String _hash;
+  private final byte[] _buffer = new byte[64 * 1024];
+  private byte[] _header = new byte[0];
+  private final byte[] _trailer = new byte[8];
+  private int _trailerLength = 0;
+  private boolean _headerDone = false;
+  private long _size = 0;
+
+  GzipStreamWriter(OutputStream out) {
+    this(out, null);
+  }
+
+  private GzipStreamWriter(OutputStream out, FileOutputStream file) {
+    _out = out;
+    _file = file;
+  }
+
+  // writes to target and fsyncs it in finish(), so a finished file is durable before it is published
+  static GzipStreamWriter toFile(File target) throws IOException {
+    FileOutputStream file = new FileOutputStream(target);
+    return new GzipStreamWriter(new BufferedOutputStream(file, 64 * 1024), file);
+  }
+
+  void write(byte[] data, int offset, int length) throws IOException {
+    if (!_headerDone) {
+      byte[] pending = new byte[_header.length + length];
+      System.arraycopy(_header, 0, pending, 0, _header.length);
+      System.arraycopy(data, offset, pending, _header.length, length);
+      int headerLength = headerLength(pending);
+      if (headerLength < 0) {
+        _header = pending;
+        return;
+      }
+      _headerDone = true;
+      _header = null;
+      data = pending;
+      offset = headerLength;
+      length = pending.length - headerLength;
+    }
+    if (_inflater.finished()) {
+      readTrailer(data, offset, length);
+      return;
+    }
+    _inflater.setInput(data, offset, length);
+    try {
+      while (!_inflater.finished() && !_inflater.needsInput()) {
+        int count = _inflater.inflate(_buffer);
+        if (count > 0) {
+          _crc.update(_buffer, 0, count);
+          _digest.update(_buffer, 0, count);
+          _size += count;
+          _out.write(_buffer, 0, count);
+        } else if (_inflater.needsDictionary()) {
+          throw new IOException("Unsupported gzip stream (preset dictionary)");
+        }
+      }
+    } catch (DataFormatException e) {
+      throw new IOException(e);
+    }
+    if (_inflater.finished()) {
+      int remaining = _inflater.getRemaining();
+      readTrailer(data, offset + length - remaining, remaining);
+    }
+  }
+
+  void finish() throws IOException {
+    if (!_inflater.finished() || _trailerLength < _trailer.length) {
+      throw new IOException("Truncated gzip stream");
+    }
+    long crc = readInt(_trailer, 0);
+    long size = readInt(_trailer, 4);
+    if (crc != _crc.getValue() || size != (_size & 0xffffffffL)) {
+      throw new IOException("Corrupt gzip stream");
+    }
+    _out.flush();
+    if (_file != null) {
+      _file.getFD().sync();
+    }
+  }
+
+  long size() {
+    return _size;
+  }
+
+  // hex SHA-256 of the inflated content, valid after finish()
+  String hash() {
+    if (_hash == null) {
+      _hash = HashUtil.toHex(_digest.digest());
+    }
+    return _hash;
+  }
+
+  @Override
+  public void close() throws IOException {
+    _inflater.end();
+    _out.close();
+  }
+
+  private void readTrailer(byte[] data, int offset, int length) {
+    int count = Math.min(length, _trailer.length - _trailerLength);
+    System.arraycopy(data, offset, _trailer, _trailerLength, count);
+    _trailerLength += count;
+  }
+
+  // returns -1 until the whole header (including optional fields) is available
+  private static int headerLength(byte[] data) throws IOException {
+    if (data.length < 10) {
+      return -1;
+    }
+    if ((data[0] & 0xff) != 0x1f || (data[1] & 0xff) != 0x8b || data[2] != 8) {
+      throw new IOException("Not a gzip stream");
+    }
+    int flags = data[3] & 0xff;
+    int position = 10;
+    if ((flags & FEXTRA) != 0) {
+      if (data.length < position + 2) {
+        return -1;
+      }
+      position += 2 + ((data[position] & 0xff) | ((data[position + 1] & 0xff) << 8));
+    }
+    if ((flags & FNAME) != 0) {
+      position = skipZeroTerminated(data, position);
+      if (position < 0) {
+        return -1;
+      }
+    }
+    if ((flags & FCOMMENT) != 0) {
+      position = skipZeroTerminated(data, position);
+      if (position < 0) {
+        return -1;
+      }
+    }
+    if ((flags & FHCRC) != 0) {
+      position += 2;
+    }
+    return position <= data.length ? position : -1;
+  }
+
+  private static int skipZeroTerminated(byte[] data, int position) {
+    while (position < data.length) {
+      if (data[position++] == 0) {
+        return position;
+      }
+    }
+    return -1;
+  }
+
+  private static long readInt(byte[] data, int offset) {
+    return (data[offset] & 0xffL) | ((data[offset + 1] & 0xffL) << 8) | ((data[offset + 2] & 0xffL) << 16) | ((data[offset + 3] & 0xffL) << 24);
+  }
+}
@@ -0,0 +1,59 @@
+package io.mimiri.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class HashUtil {
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  public static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public static byte[] sha256(String... values) {
+    MessageDigest digest = sha256();
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) {
+        digest.update((byte) 0);
+      }
+      if (values[i] != null) {
+        digest.update(values[i].getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    return digest.digest();
+  }
+
+  // hex SHA-256 of a file's content, buffer is scratch space the caller can reuse across files
+  public static String sha256(File file, byte[] buffer) throws IOException {
+    MessageDigest digest = sha256();
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+      int count;
+      while ((count = channel.read(wrapped)) >= 0) {
+        digest.update(buffer, 0, count);
+        wrapped.clear();
+      }
+    }
+    return toHex(digest.digest());
+  }
+
+  public static String toHex(byte[] bytes) {
+    char[] result = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      result[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+      result[i * 2 + 1] = HEX[bytes[i] & 0xf];
+    }
+    return new String(result);
+  }
+
+}
@@ -1,4 +1,5 @@
 package io.mimiri.app;
+import android.app.ActivityManager;
 import android.os.Bundle;
 
 import com.getcapacitor.BridgeActivity;
@@ -11,12 +12,18 @@ public class MainActivity extends BridgeActivity {
     registerPlugin(MimiriClipboardPlugin.class);
     registerPlugin(MimiriUpdatePlugin.class);
     registerPlugin(MimiriPlatformPlugin.class);
+    registerPlugin(MimiriProofOfWorkPlugin.class);
 
 
 
     try {
-      CachePlugin.database = new MimiriDatabase(this);
-      CachePlugin.database.test();
+      if (CachePlugin.database == null) {
+        ActivityManager activityManager = getSystemService(ActivityManager.class);
+        boolean lowRam = activityManager != null && activityManager.isLowRamDevice();
+        CachePlugin.memoryCache = new PayloadCache(lowRam ? 2 * 1024 * 1024 : 16 * 1024 * 1024);
+        CachePlugin.database = new MimiriDatabase(getApplicationContext(), lowRam ? MimiriDatabase.Profile.LOW_MEMORY : MimiriDatabase.Profile.DEFAULT);
+      }
+      CachePlugin.database.open();
     } catch (Exception e) {
       System.out.println(e.toString());
     }
@@ -24,5 +31,20 @@ public class MainActivity extends BridgeActivity {
     super.onCreate(savedInstanceState);
   }
 
+  @Override
+  public void onTrimMemory(int level) {
+    super.onTrimMemory(level);
+    if (CachePlugin.memoryCache != null) {
+      CachePlugin.memoryCache.onTrimMemory(level);
+    }
+  }
+
+  @Override
+  public void onDestroy() {
+    super.onDestroy();
+    if (isFinishing() && CachePlugin.database != null) {
+      CachePlugin.database.close();
+    }
+  }
 
 }
@@ -13,19 +13,25 @@ import com.getcapacitor.annotation.CapacitorPlugin;
 
 @CapacitorPlugin(name = "MimiriClipboard")
 public class MimiriClipboardPlugin extends Plugin {
+  private final PluginMetrics _metrics = PluginMetrics.forPlugin("MimiriClipboard");
   public static ClipboardManager clipboardManager;
 
   @PluginMethod()
   public void write(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
     System.out.println("clipboard write");
-    ClipData clip = ClipData.newPlainText("Mimiri Password", call.getString("text"));
+    String text = call.getString("text");
+    if (text != null) {
+      span.bytes(text);
+    }
+    ClipData clip = ClipData.newPlainText("Mimiri Password", text);
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
       PersistableBundle extras = new PersistableBundle();
       extras.putBoolean(ClipDescription.EXTRA_IS_SENSITIVE, true);
       clip.getDescription().setExtras(extras);
     }
     clipboardManager.setPrimaryClip(clip);
-    call.resolve();
+    span.resolve();
   }
 
 
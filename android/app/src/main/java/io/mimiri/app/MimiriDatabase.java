@@ -3,21 +3,100 @@ package io.mimiri.app;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import androidx.annotation.Nullable;
 
 public class MimiriDatabase extends SQLiteOpenHelper {
+  // synchronous reaches every connection through OpenParams (API 29+). cache_size and temp_store are
+  // per connection pragmas without a framework equivalent, so they only tune the primary connection
+  // onConfigure runs on, which is the one all writes go through. Pooled WAL readers keep the defaults.
+  public static class Profile {
+    public static final Profile DEFAULT = new Profile("NORMAL", -8 * 1024, "MEMORY");
+    public static final Profile LOW_MEMORY = new Profile("NORMAL", -2 * 1024, "DEFAULT");
 
+    public final String synchronous;
+    // negative values are KiB, positive values are pages (see PRAGMA cache_size)
+    public final int cacheSize;
+    public final String tempStore;
 
-  public MimiriDatabase(Context context) {
-    super(context, "cache", null, 1);
+    public Profile(String synchronous, int cacheSize, String tempStore) {
+      this.synchronous = synchronous;
+      this.cacheSize = cacheSize;
+      this.tempStore = tempStore;
+    }
+  }
+
+  interface Migration {
+    void apply(SQLiteDatabase db);
+  }
+
+  // MIGRATIONS[i] upgrades the schema from version i + 1 to i + 2. Only ever append to this list,
+  // onCreate builds the version 1 schema and replays every migration so new and upgraded installs match.
+  static final Migration[] MIGRATIONS = {
+    db -> {
+      // existing rows keep a NULL hash and are rewritten on their next write
+      db.execSQL("ALTER TABLE mimer_user ADD COLUMN hash BLOB");
+      db.execSQL("ALTER TABLE mimer_key ADD COLUMN hash BLOB");
+      db.execSQL("ALTER TABLE mimer_note ADD COLUMN hash BLOB");
+    },
+    db -> {
+      db.execSQL("CREATE INDEX IF NOT EXISTS mimer_key_user_id ON mimer_key (user_id)");
+    },
+    db -> {
+      // (user_id, id) serves both the full getAllKeys scan and keyset paging without a sort step
+      db.execSQL("DROP INDEX IF EXISTS mimer_key_user_id");
+      db.execSQL("CREATE INDEX IF NOT EXISTS mimer_key_user_id_id ON mimer_key (user_id, id)");
+    },
+    db -> {
+      // 0 = JSON text, 1 = zlib compressed UTF-8 blob, see NoteCodec
+      db.execSQL("ALTER TABLE mimer_note ADD COLUMN format INTEGER NOT NULL DEFAULT 0");
+    },
+  };
+
+  static final int VERSION = MIGRATIONS.length + 1;
+
+  private final Profile _profile;
+  private SQLiteDatabase _db;
+
+  public MimiriDatabase(Context context, Profile profile) {
+    this(context, "cache", profile);
+  }
+
+  MimiriDatabase(Context context, String name, Profile profile) {
+    super(context, name, null, VERSION);
+    _profile = profile;
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+      // applied by the framework to the primary and every pooled connection, set before WAL so the
+      // WAL flag is kept
+      setOpenParams(new SQLiteDatabase.OpenParams.Builder().setSynchronousMode(profile.synchronous).build());
+    }
+    // WAL lets the framework hand out pooled read connections while a single writer commits
+    setWriteAheadLoggingEnabled(true);
     System.out.println("MimiriDatabase constructor");
   }
 
+  @Override
+  public void onConfigure(SQLiteDatabase db) {
+    try {
+      // older releases have no OpenParams synchronous mode, there the writer still gets it
+      db.execSQL("PRAGMA synchronous = " + _profile.synchronous);
+      db.execSQL("PRAGMA cache_size = " + _profile.cacheSize);
+      db.execSQL("PRAGMA temp_store = " + _profile.tempStore);
+    } catch (Exception e) {
+      System.out.println(e.toString());
+    }
+  }
+
   @Override
   public void onCreate(SQLiteDatabase db) {
+    System.out.println("create database");
+    createBaseSchema(db);
+    migrate(db, 1, VERSION);
+  }
+
+  private static void createBaseSchema(SQLiteDatabase db) {
     try {
-      System.out.println("create database");
       db.execSQL("""
               CREATE TABLE IF NOT EXISTS mimer_user (
                  id INTEGER NOT NULL PRIMARY KEY AUTOINCREMENT,
@@ -48,12 +127,29 @@ public class MimiriDatabase extends SQLiteOpenHelper {
 
   @Override
   public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    System.out.println("upgrade database " + oldVersion + " -> " + newVersion);
+    migrate(db, oldVersion, newVersion);
+  }
+
+  // runs inside the transaction SQLiteOpenHelper opens for onCreate/onUpgrade, so a failing
+  // migration rolls back and leaves the stored version untouched
+  static void migrate(SQLiteDatabase db, int fromVersion, int toVersion) {
+    for (int version = fromVersion; version < toVersion; version++) {
+      MIGRATIONS[version - 1].apply(db);
+    }
+  }
 
+  // Shared for the process lifetime and closed from MainActivity.onDestroy, callers must not close it
+  public synchronized SQLiteDatabase open() {
+    if (_db == null || !_db.isOpen()) {
+      _db = getWritableDatabase();
+    }
+    return _db;
   }
 
-  public void test() {
-    System.out.println("test");
-    SQLiteDatabase db = this.getWritableDatabase();
-    db.close();
+  @Override
+  public synchronized void close() {
+    _db = null;
+    super.close();
   }
 }
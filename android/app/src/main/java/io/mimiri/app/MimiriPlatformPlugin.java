@@ -20,14 +20,29 @@ import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 
+import java.io.File;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @CapacitorPlugin(name = "MimiriPlatform")
 public class MimiriPlatformPlugin extends Plugin {
+  private final PluginMetrics _metrics = PluginMetrics.forPlugin("MimiriPlatform");
   private boolean isEmulator = false;
+  // password hashing never runs on the UI or plugin thread
+  private final ExecutorService _hashing = Executors.newCachedThreadPool();
+
+  @Override
+  protected void handleOnDestroy() {
+    _hashing.shutdownNow();
+  }
 
   @PluginMethod()
   public void info(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
     JSObject info = new JSObject();
     WindowMetrics metrics = WindowMetricsCalculator.getOrCreate()
             .computeCurrentWindowMetrics(getActivity());
@@ -53,7 +68,7 @@ public class MimiriPlatformPlugin extends Plugin {
             BiometricManager.Authenticators.BIOMETRIC_WEAK
     );
     info.put("biometrics", isEmulator || biometrics == BiometricManager.BIOMETRIC_SUCCESS);
-    call.resolve(info);
+    span.resolve(info);
   }
 
   private void computeWindowSizeClasses() {
@@ -61,11 +76,15 @@ public class MimiriPlatformPlugin extends Plugin {
 
   @PluginMethod()
   public void verifyBiometry(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    // optional { password, salt, algorithm, iterations }, hashed while the prompt is showing and
+    // returned as passwordHash once verified
+    final Future<String> derived = derive(call.getObject("derive"));
     final Runnable verifyBiometryRunnable = new Runnable() {
       public void run() {
         try {
           if (isEmulator) {
-            call.resolve(new JSObject().put("verified", true));
+            resolveVerified(span, derived);
             return;
           }
 
@@ -89,40 +108,158 @@ public class MimiriPlatformPlugin extends Plugin {
             @Override
             public void onAuthenticationError(int errorCode, @NonNull CharSequence errString) {
               super.onAuthenticationError(errorCode, errString);
-              call.resolve(new JSObject().put("verified", false).put("errorCode", errorCode).put("error", errString.toString()));
+              discard(derived);
+              span.resolve(new JSObject().put("verified", false).put("errorCode", errorCode).put("error", errString.toString()));
             }
 
             @Override
             public void onAuthenticationSucceeded(@NonNull BiometricPrompt.AuthenticationResult result) {
               super.onAuthenticationSucceeded(result);
-              call.resolve(new JSObject().put("verified", true));
+              resolveVerified(span, derived);
             }
 
             @Override
             public void onAuthenticationFailed() {
+              // the prompt stays open for another attempt, success or error settles the call
               super.onAuthenticationFailed();
-              call.resolve(new JSObject().put("verified", false));
             }
           });
           biometricPrompt.authenticate(promptInfo);
         } catch (Exception e) {
-          call.resolve(new JSObject().put("verified", false).put("error", e.toString()));
+          discard(derived);
+          span.resolve(new JSObject().put("verified", false).put("error", e.toString()));
         }
       }
     };
     getActivity().runOnUiThread(verifyBiometryRunnable);
   }
 
+  private Future<String> derive(JSObject options) {
+    if (options == null) {
+      return null;
+    }
+    String password = options.getString("password");
+    String salt = options.getString("salt");
+    String algorithm = options.getString("algorithm");
+    Integer iterations = options.getInteger("iterations");
+    if (password == null || salt == null || algorithm == null || iterations == null) {
+      return null;
+    }
+    return _hashing.submit(() -> PasswordHasher.hashPassword(password, salt, algorithm, iterations));
+  }
+
+  private void resolveVerified(PluginMetrics.Span span, Future<String> derived) {
+    if (derived == null) {
+      span.resolve(new JSObject().put("verified", true));
+      return;
+    }
+    // the callback runs on the UI thread, wait for the hash elsewhere
+    _hashing.execute(() -> {
+      JSObject result = new JSObject().put("verified", true);
+      try {
+        result.put("passwordHash", derived.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (CancellationException e) {
+        result.put("deriveError", e.toString());
+      } catch (ExecutionException e) {
+        System.out.println(e.getCause().toString());
+        result.put("deriveError", e.getCause().toString());
+      }
+      span.resolve(result);
+    });
+  }
+
+  private void discard(Future<String> derived) {
+    if (derived != null) {
+      derived.cancel(true);
+    }
+  }
+
+  @PluginMethod()
+  public void hashPassword(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    String password = call.getString("password");
+    String salt = call.getString("salt");
+    String algorithm = call.getString("algorithm");
+    Integer iterations = call.getInt("iterations");
+    if (password == null || salt == null || algorithm == null || iterations == null) {
+      span.reject("password, salt, algorithm and iterations are required");
+      return;
+    }
+    _hashing.execute(() -> {
+      try {
+        long start = System.nanoTime();
+        String hash = PasswordHasher.hashPassword(password, salt, algorithm, iterations);
+        span.resolve(new JSObject().put("hash", hash).put("durationMs", (System.nanoTime() - start) / 1_000_000));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        span.reject("Cancelled");
+      } catch (Exception e) {
+        span.error(e);
+        span.reject(e.getMessage());
+      }
+    });
+  }
+
+  @PluginMethod()
+  public void computeResponse(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    String passwordHash = call.getString("passwordHash");
+    String challenge = call.getString("challenge");
+    if (passwordHash == null || challenge == null) {
+      span.reject("passwordHash and challenge are required");
+      return;
+    }
+    _hashing.execute(() -> {
+      try {
+        span.resolve(new JSObject().put("response", PasswordHasher.computeResponse(passwordHash, challenge)));
+      } catch (Exception e) {
+        span.error(e);
+        span.reject(e.getMessage());
+      }
+    });
+  }
+
   @PluginMethod()
   public void enrollBiometry(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
       final Intent enrollIntent;
       enrollIntent = new Intent(Settings.ACTION_BIOMETRIC_ENROLL);
       getContext().startActivity(enrollIntent);
       startActivityForResult(call, enrollIntent, "verifyResult");
     }
-    call.resolve(new JSObject());
+    span.resolve(new JSObject());
   }
 
+  // Counts, errors, latency histogram and payload bytes / SQLite rows per method of every plugin,
+  // see PluginMetrics. reset clears them after the snapshot is taken.
+  @PluginMethod()
+  public void getMetrics(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    JSObject metrics = PluginMetrics.snapshot();
+    if (Boolean.TRUE.equals(call.getBoolean("reset", false))) {
+      PluginMetrics.reset();
+    }
+    span.resolve(metrics);
+  }
 
+  @PluginMethod()
+  public void resetMetrics(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    PluginMetrics.reset();
+    span.resolve();
+  }
+
+  // Writes a snapshot every intervalMs to metrics.json in the files dir, which keeps the last entries
+  // (default 60) snapshots. An intervalMs of 0 stops it.
+  @PluginMethod()
+  public void setMetricsDump(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    long intervalMs = call.getLong("intervalMs", 0L);
+    int entries = call.getInt("entries", 60);
+    PluginMetrics.dump(new File(getContext().getFilesDir(), "metrics.json"), intervalMs, entries);
+    span.resolve();
+  }
 }
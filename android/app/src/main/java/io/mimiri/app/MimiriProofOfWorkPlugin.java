@@ -0,0 +1,80 @@
+package io.mimiri.app;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@CapacitorPlugin(name = "MimiriProofOfWork")
+public class MimiriProofOfWorkPlugin extends Plugin {
+  private final PluginMetrics _metrics = PluginMetrics.forPlugin("MimiriProofOfWork");
+  private static final int THREADS = Runtime.getRuntime().availableProcessors();
+  private final Map<String, ProofOfWork> _running = new ConcurrentHashMap<>();
+  private final ExecutorService _worker = Executors.newCachedThreadPool();
+
+  @Override
+  protected void handleOnDestroy() {
+    for (ProofOfWork work : _running.values()) {
+      work.cancel();
+    }
+    _worker.shutdownNow();
+  }
+
+  @PluginMethod()
+  public void compute(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    String value = call.getString("value");
+    Integer bits = call.getInt("bits");
+    if (value == null || bits == null) {
+      span.reject("value and bits are required");
+      return;
+    }
+    // the web layer names each run so it can cancel it, calls without an id get one of their own
+    String id = call.getString("id", UUID.randomUUID().toString());
+    ProofOfWork work = new ProofOfWork();
+    if (_running.putIfAbsent(id, work) != null) {
+      span.reject("Proof of work " + id + " is already running");
+      return;
+    }
+    _worker.execute(() -> {
+      try {
+        long start = System.nanoTime();
+        String proof = work.compute(value, bits, THREADS);
+        if (proof == null) {
+          span.reject("Cancelled");
+          return;
+        }
+        JSObject result = new JSObject();
+        result.put("proof", proof);
+        result.put("durationMs", (System.nanoTime() - start) / 1_000_000);
+        span.resolve(result);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        span.reject("Cancelled");
+      } catch (Exception e) {
+        span.error(e);
+        span.reject(e.toString());
+      } finally {
+        _running.remove(id, work);
+      }
+    });
+  }
+
+  @PluginMethod()
+  public void cancel(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    String id = call.getString("id");
+    ProofOfWork work = id != null ? _running.get(id) : null;
+    if (work != null) {
+      work.cancel();
+    }
+    span.resolve(new JSObject().put("cancelled", work != null));
+  }
+}
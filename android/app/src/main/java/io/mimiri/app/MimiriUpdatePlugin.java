@@ -11,25 +11,44 @@ import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
-import java.util.Base64;
-import java.util.Objects;
-import java.util.zip.GZIPInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @CapacitorPlugin(name = "MimiriUpdate")
 public class MimiriUpdatePlugin extends Plugin {
+  private final PluginMetrics _metrics = PluginMetrics.forPlugin("MimiriUpdate");
   private boolean _initialized = false;
   private File _bundlesPath;
   private File _configPath;
   private JSObject _config;
+  private BlobStore _blobs;
+  private BundleCatalog _catalog;
+  private BundleRetention _retention;
+  // guards _config against the retention sweep, which must never remove a version that just became active
+  private final Object _lock = new Object();
+  private static final int EXTRACT_THREADS = Runtime.getRuntime().availableProcessors();
+  private final Map<String, BundleInstall> _installs = new ConcurrentHashMap<>();
+  // bases of queued or running deltas with their count, guarded by _lock. delete and the retention
+  // sweep leave them alone until the delta is applied.
+  private final Map<String, Integer> _deltaBases = new HashMap<>();
+  private final ExecutorService _worker = Executors.newSingleThreadExecutor();
+
+  @Override
+  protected void handleOnDestroy() {
+    for (BundleInstall install : _installs.values()) {
+      abort(install);
+    }
+    _installs.clear();
+    // queued work, the aborts included, still runs and the thread exits once the queue is empty
+    _worker.shutdown();
+  }
 
   private void init() {
     if (!_initialized) {
@@ -37,7 +56,11 @@ public class MimiriUpdatePlugin extends Plugin {
       try {
         _bundlesPath = new File(getContext().getFilesDir(), "bundles");
         _configPath = new File(_bundlesPath, "config.json");
+        _blobs = new BlobStore(_bundlesPath);
+        _catalog = new BundleCatalog(_bundlesPath);
+        _retention = new BundleRetention(_bundlesPath, _catalog, _blobs, _lock);
         if (_bundlesPath.exists() || _bundlesPath.mkdirs()) {
+          BundleInstall.cleanStaging(_bundlesPath);
           if (_configPath.exists()) {
             _config = FileUtil.readJson(_configPath);
           }
@@ -56,6 +79,7 @@ public class MimiriUpdatePlugin extends Plugin {
 
   @PluginMethod()
   public void getInstalledVersions(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
     init();
     JSObject result = new JSObject();
     JSArray bundles = new JSArray();
@@ -70,82 +94,343 @@ public class MimiriUpdatePlugin extends Plugin {
     baseBundle.put("active", "base".equals(_config.getString("activeVersion")));
     baseBundle.put("previous", "base".equals(_config.getString("previousActiveVersion")));
 
-    for (final File file : Objects.requireNonNull(_bundlesPath.listFiles())) {
-      File infoPath =  new File(file, "info.json");
-      if (infoPath.exists()) {
-        JSObject info = FileUtil.readJson(infoPath);
-        if (info != null) {
-          String version = info.getString("version", "");
-          info.put("hostVersion", VersionInfo.HostVersion);
-          info.put("base", false);
-          assert version != null;
-          info.put("active", version.equals(_config.getString("activeVersion")));
-          info.put("previous", version.equals(_config.getString("previousActiveVersion")));
-          bundles.put(info);
-        }
-      }
+    for (JSObject info : _catalog.bundles()) {
+      String version = info.getString("version", "");
+      info.put("hostVersion", VersionInfo.HostVersion);
+      info.put("base", false);
+      assert version != null;
+      info.put("active", version.equals(_config.getString("activeVersion")));
+      info.put("previous", version.equals(_config.getString("previousActiveVersion")));
+      bundles.put(info);
     }
     result.put("bundles", bundles);
-    call.resolve(result);
+    span.resolve(result);
   }
 
-  private void saveFileRecursive(File dir, JSONObject item) throws JSONException, IOException {
+  // Extraction runs off the plugin thread and fans out over the cores, abortSave cancels it.
+  // save, saveDelta and commitSave take an optional prewarm flag, see prewarm.
+  @PluginMethod()
+  public void save(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
     init();
-    File path = new File(dir, item.getString("name"));
-    if (item.has("files")) {
-      if (path.exists() || path.mkdirs()) {
-        JSONArray files = item.getJSONArray("files");
-        for (int i = 0; i < files.length(); i++) {
-          saveFileRecursive(path, files.getJSONObject(i));
+    String version = call.getString("version");
+    JSObject bundle = call.getObject("bundle");
+    if (version == null || bundle == null) {
+      span.reject("version and bundle are required");
+      return;
+    }
+    try {
+      boolean prewarm = Boolean.TRUE.equals(call.getBoolean("prewarm", false));
+      List<String[]> files = new ArrayList<>();
+      BundleInstall.collect("", bundle.getJSONArray("files"), files);
+      bundle.remove("files");
+      bundle.remove("signatures");
+      BundleInstall install = new BundleInstall(version, new File(_bundlesPath, version), _blobs);
+      BundleInstall previous = _installs.put(version, install);
+      if (previous != null) {
+        abort(previous);
+      }
+      _worker.execute(() -> {
+        try {
+          install.writeAll(files, EXTRACT_THREADS);
+          install.commit(bundle);
+          _catalog.put(version, bundle);
+          if (prewarm) {
+            warm(version, true);
+          }
+          span.resolve();
+        } catch (Exception e) {
+          span.error(e);
+          install.abort();
+          span.reject(e.toString());
+        } finally {
+          _installs.remove(version, install);
         }
+        scheduleSweep();
+      });
+    } catch (Exception e) {
+      span.error(e);
+      span.reject(e.toString());
+    }
+  }
+
+  // Installs version as a delta against the installed bundle "base": unchanged files are linked or
+  // copied from it, changed files are rebuilt from patches, and every file is checked against its hash.
+  @PluginMethod()
+  public void saveDelta(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    init();
+    String version = call.getString("version");
+    String base = call.getString("base");
+    JSArray files = call.getArray("files");
+    if (version == null || base == null || files == null) {
+      span.reject("version, base and files are required");
+      return;
+    }
+    File baseDir = new File(_bundlesPath, base);
+    synchronized (_lock) {
+      if (base.equals("base") || _catalog.get(base) == null) {
+        span.reject("base version " + base + " is not installed");
+        return;
       }
-    } else {
-      String content = item.getString("content");
-      try (GZIPInputStream zipStream = new GZIPInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(content)))) {
-        Files.copy(zipStream, path.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      _deltaBases.merge(base, 1, Integer::sum);
+    }
+    try {
+      JSObject info = call.getObject("info", new JSObject());
+      info.remove("files");
+      info.remove("signatures");
+      boolean prewarm = Boolean.TRUE.equals(call.getBoolean("prewarm", false));
+      BundleInstall install = new BundleInstall(version, new File(_bundlesPath, version), _blobs);
+      BundleInstall previous = _installs.put(version, install);
+      if (previous != null) {
+        abort(previous);
       }
+      _worker.execute(() -> {
+        try {
+          install.applyDelta(baseDir, files);
+          install.commit(info);
+          _catalog.put(version, info);
+          if (prewarm) {
+            warm(version, true);
+          }
+          span.resolve();
+        } catch (Exception e) {
+          span.error(e);
+          install.abort();
+          span.reject(e.toString());
+        } finally {
+          _installs.remove(version, install);
+          unpin(base);
+        }
+        scheduleSweep();
+      });
+    } catch (Exception e) {
+      unpin(base);
+      span.error(e);
+      span.reject(e.toString());
     }
   }
 
+  private void unpin(String base) {
+    synchronized (_lock) {
+      _deltaBases.computeIfPresent(base, (key, count) -> count > 1 ? count - 1 : null);
+    }
+  }
+
+  // Streaming install: beginSave, then saveChunk for every piece of every file, then commitSave.
+  // Keeps bridge messages and native memory bounded by the chunk size instead of the bundle size.
   @PluginMethod()
-  public void save(PluginCall call) {
+  public void beginSave(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
     init();
     try {
       String version = call.getString("version");
-      JSObject bundle = call.getObject("bundle");
-      if (version != null && bundle != null) {
-        File bundlePath = new File(_bundlesPath, version);
-        if (bundlePath.exists() || bundlePath.mkdirs()) {
-          JSONArray files = bundle.getJSONArray("files");
-          for (int i = 0; i < files.length(); i++) {
-            saveFileRecursive(bundlePath, files.getJSONObject(i));
-          }
+      if (version == null) {
+        span.reject("version missing");
+        return;
+      }
+      BundleInstall previous = _installs.remove(version);
+      if (previous != null) {
+        abort(previous);
+      }
+      _installs.put(version, new BundleInstall(version, new File(_bundlesPath, version), _blobs));
+      span.resolve();
+    } catch (Exception e) {
+      span.error(e);
+      span.reject(e.toString());
+    }
+  }
+
+  @PluginMethod()
+  public void saveChunk(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    init();
+    String version = call.getString("version");
+    BundleInstall install = version != null ? _installs.get(version) : null;
+    if (install == null) {
+      span.reject("no install in progress for " + version);
+      return;
+    }
+    String path = call.getString("path", "");
+    boolean last = Boolean.TRUE.equals(call.getBoolean("last", false));
+    String data = call.getString("data", "");
+    span.bytes(data);
+    // chunks of an install are applied in order on the worker, behind the commit of an earlier save
+    _worker.execute(() -> {
+      try {
+        install.append(path, data, last);
+        if (last) {
+          install.expect(path, call.getString("hash"));
         }
-        bundle.remove("files");
-        bundle.remove("signatures");
-        File infoPath = new File(bundlePath, "info.json");
-        FileUtil.writeJson(infoPath, bundle);
+        span.resolve();
+      } catch (Exception e) {
+        span.error(e);
+        _installs.remove(version, install);
+        install.abort();
+        span.reject(e.toString());
+      }
+    });
+  }
+
+  @PluginMethod()
+  public void commitSave(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    init();
+    String version = call.getString("version");
+    BundleInstall install = version != null ? _installs.remove(version) : null;
+    if (install == null) {
+      span.reject("no install in progress for " + version);
+      return;
+    }
+    JSObject info = call.getObject("info", new JSObject());
+    info.remove("files");
+    info.remove("signatures");
+    boolean prewarm = Boolean.TRUE.equals(call.getBoolean("prewarm", false));
+    _worker.execute(() -> {
+      try {
+        install.commit(info);
+        _catalog.put(version, info);
+        if (prewarm) {
+          warm(version, true);
+        }
+        span.resolve();
+      } catch (Exception e) {
+        span.error(e);
+        install.abort();
+        span.reject(e.toString());
+      }
+      scheduleSweep();
+    });
+  }
+
+  // Reads the first paint files of version into the page cache and checks them against its manifest,
+  // so the reload after use() does not cold-load them from flash. assetManifest caches the file list.
+  @PluginMethod()
+  public void prewarm(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    init();
+    String version = call.getString("version");
+    if (version == null || version.equals("base") || _catalog.get(version) == null) {
+      span.reject("version " + version + " is not installed");
+      return;
+    }
+    boolean assetManifest = Boolean.TRUE.equals(call.getBoolean("assetManifest", false));
+    _worker.execute(() -> {
+      try {
+        BundleWarmer.Result result = BundleWarmer.warm(new File(_bundlesPath, version), assetManifest);
+        if (result.corrupt.isEmpty()) {
+          span.resolve(result.toJson());
+        } else {
+          markCorrupt(version, true);
+          span.reject("Bundle " + version + " is corrupt: " + result.corrupt);
+        }
+      } catch (Exception e) {
+        span.error(e);
+        span.reject(e.toString());
+      }
+    });
+  }
+
+  // Re-hashes every file of version on all cores against the manifest written at install time. A
+  // bundle with mismatching or missing files is marked corrupt and use() refuses it from then on,
+  // a clean run clears the mark. Bundles installed before manifests existed resolve with manifest false.
+  @PluginMethod()
+  public void verify(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    init();
+    String version = call.getString("version");
+    if (version == null || version.equals("base") || _catalog.get(version) == null) {
+      span.reject("version " + version + " is not installed");
+      return;
+    }
+    _worker.execute(() -> {
+      try {
+        BundleVerifier.Result result = BundleVerifier.verify(new File(_bundlesPath, version), EXTRACT_THREADS);
+        if (result.manifest) {
+          markCorrupt(version, !result.ok());
+        }
+        span.resolve(result.toJson());
+      } catch (Exception e) {
+        span.error(e);
+        span.reject(e.toString());
+      }
+    });
+  }
+
+  // kept in info.json as well, so the mark survives a catalog rebuild
+  private void markCorrupt(String version, boolean corrupt) {
+    JSObject info = _catalog.get(version);
+    if (info == null || Boolean.TRUE.equals(info.getBoolean("corrupt", false)) == corrupt) {
+      return;
+    }
+    if (corrupt) {
+      info.put("corrupt", true);
+    } else {
+      info.remove("corrupt");
+    }
+    FileUtil.writeJson(new File(new File(_bundlesPath, version), "info.json"), info);
+    _catalog.put(version, info);
+  }
+
+  // Cancels at once so a running extraction stops early, the cleanup is queued behind the work still
+  // using the install so it never races a chunk or commit.
+  private void abort(BundleInstall install) {
+    install.cancel();
+    _worker.execute(install::abort);
+  }
+
+  private void warm(String version, boolean assetManifest) {
+    try {
+      BundleWarmer.Result result = BundleWarmer.warm(new File(_bundlesPath, version), assetManifest);
+      if (!result.corrupt.isEmpty()) {
+        System.out.println("Bundle " + version + " is corrupt: " + result.corrupt);
+        markCorrupt(version, true);
       }
     } catch (Exception e) {
       System.out.println(e.toString());
     }
-    call.resolve();
+  }
+
+  @PluginMethod()
+  public void abortSave(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    init();
+    String version = call.getString("version");
+    BundleInstall install = version != null ? _installs.remove(version) : null;
+    if (install != null) {
+      abort(install);
+    }
+    span.resolve();
   }
 
   @SuppressLint("ApplySharedPref")
   @PluginMethod()
   public void use(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
     init();
     String version = call.getString("version");
     boolean noActivate = Boolean.TRUE.equals(call.getBoolean("noActivate"));
+    if (version != null && !version.equals("base")) {
+      JSObject info = _catalog.get(version);
+      if (info == null) {
+        span.reject("version " + version + " is not installed");
+        return;
+      }
+      if (Boolean.TRUE.equals(info.getBoolean("corrupt", false))) {
+        span.reject("version " + version + " failed verification");
+        return;
+      }
+    }
     String serverBasePath = "";
     if (version != null && !version.equals("base")) {
       serverBasePath = new File(_bundlesPath, version).toString();
     }
     if (version != null && !version.equals(_config.getString("activeVersion"))) {
-      _config.put("previousActiveVersion", _config.getString("activeVersion"));
-      _config.put("activeVersion", version);
-      FileUtil.writeJson(_configPath, _config);
+      synchronized (_lock) {
+        _config.put("previousActiveVersion", _config.getString("activeVersion"));
+        _config.put("activeVersion", version);
+        FileUtil.writeJson(_configPath, _config);
+      }
 			SharedPreferences.Editor webViewSettingsEditor = getContext().getSharedPreferences("CapWebViewSettings", Activity.MODE_PRIVATE).edit();
 			webViewSettingsEditor.putString("serverBasePath", serverBasePath);
 			webViewSettingsEditor.commit();
@@ -154,12 +439,13 @@ public class MimiriUpdatePlugin extends Plugin {
       getBridge().setServerBasePath(serverBasePath);
       getBridge().reload();
     }
-    call.resolve();
+    span.resolve();
   }
 
   @SuppressLint("ApplySharedPref")
 	@PluginMethod()
 	public void activate(PluginCall call) {
+		PluginMetrics.Span span = _metrics.start(call);
 		init();
 		String version = _config.getString("activeVersion");
     if (version != null) {
@@ -173,38 +459,113 @@ public class MimiriUpdatePlugin extends Plugin {
       getBridge().setServerBasePath(serverBasePath);
       getBridge().reload();
 		}
-    call.resolve();
+    span.resolve();
 	}
 
   @PluginMethod()
   public void delete(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
     init();
     String version = call.getString("version");
     if (version != null && !version.equals(_config.getString("activeVersion")) && !version.equals("base")) {
-      File versionPath = new File(_bundlesPath, version);
-      if (versionPath.exists()) {
-        FileUtil.deleteDir(versionPath);
+      try {
+        remove(version);
+      } catch (Exception e) {
+        span.error(e);
+      }
+    }
+    span.resolve();
+  }
+
+  // Retires version at once unless a delta still reads it as its base, then the removal is queued
+  // behind that delta on the worker instead.
+  private void remove(String version) throws IOException {
+    File versionPath = new File(_bundlesPath, version);
+    File retired;
+    synchronized (_lock) {
+      if (_deltaBases.containsKey(version)) {
+        _worker.execute(() -> {
+          try {
+            remove(version);
+          } catch (Exception e) {
+            System.out.println(e.toString());
+          }
+        });
+        return;
+      }
+      if (!versionPath.exists()) {
+        return;
+      }
+      retired = BundleInstall.retire(versionPath);
+      _catalog.remove(version);
+    }
+    // queued behind any running save, whose blobs are pinned until its manifest is published
+    _worker.execute(() -> {
+      FileUtil.deleteDir(retired);
+      _blobs.collect(_bundlesPath);
+    });
+  }
+
+  // Runs the retention policy now and resolves with what it did. budgetBytes, when given, also
+  // becomes the budget of the automatic sweeps that follow installs and good().
+  @PluginMethod()
+  public void sweep(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
+    init();
+    Long budget = call.getLong("budgetBytes");
+    if (budget != null) {
+      synchronized (_lock) {
+        _config.put("retentionBudgetBytes", budget);
+        FileUtil.writeJson(_configPath, _config);
+      }
+    }
+    _worker.execute(() -> span.resolve(_retention.sweep(budget(), this::configSnapshot).toJson()));
+  }
+
+  private void scheduleSweep() {
+    _worker.execute(() -> {
+      BundleRetention.Report report = _retention.sweep(budget(), this::configSnapshot);
+      if (!report.removed.isEmpty()) {
+        System.out.println(report.toString());
       }
+    });
+  }
+
+  private long budget() {
+    synchronized (_lock) {
+      return _config.optLong("retentionBudgetBytes", BundleRetention.DEFAULT_BUDGET);
+    }
+  }
+
+  private JSObject configSnapshot() {
+    synchronized (_lock) {
+      JSObject snapshot;
+      try {
+        snapshot = new JSObject(_config.toString());
+      } catch (Exception e) {
+        snapshot = new JSObject();
+      }
+      // only in the snapshot, never written to config.json
+      snapshot.put(BundleRetention.PINNED, new JSArray(_deltaBases.keySet()));
+      return snapshot;
     }
-    call.resolve();
   }
 
   @PluginMethod()
   public void good(PluginCall call) {
+    PluginMetrics.Span span = _metrics.start(call);
     init();
     String version = call.getString("version");
     if (version != null && version.equals(_config.getString("activeVersion")) && !version.equals("base")) {
-      File bundlePath = new File(_bundlesPath, version);
-      File infoPath = new File(bundlePath, "info.json");
-      if (infoPath.exists()) {
-        JSObject info = FileUtil.readJson(infoPath);
-        if (info != null && Boolean.FALSE.equals(info.getBoolean("good", false))) {
-          info.put("good", true);
-          FileUtil.writeJson(infoPath, info);
-        }
+      JSObject info = _catalog.get(version);
+      if (info != null && Boolean.FALSE.equals(info.getBoolean("good", false))) {
+        info.put("good", true);
+        FileUtil.writeJson(new File(new File(_bundlesPath, version), "info.json"), info);
+        _catalog.put(version, info);
+        scheduleSweep();
       }
     }
-    call.resolve();
+    span.resolve();
   }
 
 }
@@ -0,0 +1,92 @@
+package io.mimiri.app;
+
+import android.database.Cursor;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// On-disk encoding of mimer_note.data. The per-row format column says how to read it back,
+// so rows written before compression was enabled (format 0) keep working unchanged.
+public class NoteCodec {
+  public static final long FORMAT_TEXT = 0;
+  public static final long FORMAT_DEFLATE = 1;
+
+  public static final NoteCodec DEFAULT = new NoteCodec(true, 2048);
+  public static final NoteCodec PLAIN = new NoteCodec(false, 0);
+
+  public static class Encoded {
+    public final Object data;
+    public final long format;
+
+    Encoded(Object data, long format) {
+      this.data = data;
+      this.format = format;
+    }
+  }
+
+  private final boolean _compress;
+  private final int _minChars;
+
+  public NoteCodec(boolean compress, int minChars) {
+    _compress = compress;
+    _minChars = minChars;
+  }
+
+  public Encoded encode(String json) {
+    if (_compress && json.length() >= _minChars) {
+      byte[] text = json.getBytes(StandardCharsets.UTF_8);
+      byte[] compressed = deflate(text);
+      // ciphertext heavy payloads sometimes do not shrink, those stay as text
+      if (compressed.length < text.length) {
+        return new Encoded(compressed, FORMAT_DEFLATE);
+      }
+    }
+    return new Encoded(json, FORMAT_TEXT);
+  }
+
+  public static String decode(Cursor reader, int dataIndex, int formatIndex) throws DataFormatException {
+    if (reader.getLong(formatIndex) == FORMAT_DEFLATE) {
+      return new String(inflate(reader.getBlob(dataIndex)), StandardCharsets.UTF_8);
+    }
+    return reader.getString(dataIndex);
+  }
+
+  static byte[] deflate(byte[] input) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(input);
+      deflater.finish();
+      ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 2 + 64);
+      byte[] buffer = new byte[16 * 1024];
+      while (!deflater.finished()) {
+        int count = deflater.deflate(buffer);
+        output.write(buffer, 0, count);
+      }
+      return output.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  static byte[] inflate(byte[] input) throws DataFormatException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(input);
+      ByteArrayOutputStream output = new ByteArrayOutputStream(input.length * 3);
+      byte[] buffer = new byte[16 * 1024];
+      while (!inflater.finished()) {
+        int count = inflater.inflate(buffer);
+        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new DataFormatException("Truncated note payload");
+        }
+        output.write(buffer, 0, count);
+      }
+      return output.toByteArray();
+    } finally {
+      inflater.end();
+    }
+  }
+}
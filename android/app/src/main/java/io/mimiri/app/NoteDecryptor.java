@@ -0,0 +1,210 @@
+package io.mimiri.app;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+// Decrypts cached notes the way SymmetricCrypt.decrypt does in the web layer: base64 of iv followed
+// by ciphertext, AES-GCM ("AES;GCM;32") or AES-CBC ("AES;CBC;PKCS7;32"), and plaintext that starts
+// with 00 00 00 01 is gzip. Notes are spread over a pool, each thread keeps its own Cipher instances.
+class NoteDecryptor implements AutoCloseable {
+  static final String GCM = "AES;GCM;32";
+  static final String CBC = "AES;CBC;PKCS7;32";
+
+  static class Key {
+    final String algorithm;
+    final SecretKeySpec spec;
+
+    Key(String algorithm, byte[] raw) throws GeneralSecurityException {
+      if (!GCM.equals(algorithm) && !CBC.equals(algorithm)) {
+        throw new GeneralSecurityException("Algorithm not supported " + algorithm);
+      }
+      if (raw.length != 32) {
+        throw new GeneralSecurityException("Expected a 256 bit key for " + algorithm);
+      }
+      this.algorithm = algorithm;
+      this.spec = new SecretKeySpec(raw, "AES");
+    }
+  }
+
+  private static final ThreadLocal<Cipher> GCM_CIPHER = ThreadLocal.withInitial(() -> cipher("AES/GCM/NoPadding"));
+  private static final ThreadLocal<Cipher> CBC_CIPHER = ThreadLocal.withInitial(() -> cipher("AES/CBC/PKCS5Padding"));
+
+  private final Map<String, Key> _keys = new HashMap<>();
+  private final ExecutorService _pool;
+  private final int _threads;
+
+  NoteDecryptor(int threads) {
+    _threads = Math.max(1, threads);
+    AtomicInteger counter = new AtomicInteger();
+    _pool = new ThreadPoolExecutor(_threads, _threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+      Thread thread = new Thread(runnable, "mimiri-decrypt-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    ((ThreadPoolExecutor) _pool).allowCoreThreadTimeOut(true);
+  }
+
+  void addKey(String name, Key key) {
+    _keys.put(name, key);
+  }
+
+  boolean hasKey(String name) {
+    return _keys.containsKey(name);
+  }
+
+  // Unwraps a cached mimer_key row (KeyData JSON) with the root key, like loadKeysFromSource does
+  void addKeyData(String json, Key rootKey) throws GeneralSecurityException, JSONException {
+    JSONObject keyData = new JSONObject(json);
+    addKey(keyData.getString("name"), new Key(keyData.getString("algorithm"), decryptBytes(rootKey, keyData.getString("keyData"))));
+  }
+
+  // Decrypts the items of each note (NoteData JSON) in place of their data. An item that cannot be
+  // decrypted keeps its ciphertext and carries "error", so the caller can fall back to its own path.
+  List<JSObject> decryptNotes(List<String> notes) throws InterruptedException {
+    JSObject[] results = new JSObject[notes.size()];
+    AtomicInteger next = new AtomicInteger();
+    Runnable worker = () -> {
+      for (int i = next.getAndIncrement(); i < results.length; i = next.getAndIncrement()) {
+        results[i] = decryptNote(notes.get(i));
+      }
+    };
+    int count = Math.min(_threads, results.length);
+    if (count <= 1) {
+      worker.run();
+    } else {
+      List<Future<?>> futures = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        futures.add(_pool.submit(worker));
+      }
+      try {
+        for (Future<?> future : futures) {
+          future.get();
+        }
+      } catch (ExecutionException e) {
+        throw new IllegalStateException(e.getCause());
+      } finally {
+        for (Future<?> future : futures) {
+          future.cancel(true);
+        }
+      }
+    }
+    List<JSObject> list = new ArrayList<>(results.length);
+    for (JSObject result : results) {
+      list.add(result);
+    }
+    return list;
+  }
+
+  private JSObject decryptNote(String json) {
+    try {
+      JSObject note = new JSObject(json);
+      Key key = _keys.get(note.optString("keyName"));
+      JSONArray items = note.optJSONArray("items");
+      if (items == null) {
+        return note;
+      }
+      for (int i = 0; i < items.length(); i++) {
+        JSONObject item = items.getJSONObject(i);
+        if (key == null) {
+          item.put("error", "Key not found: " + note.optString("keyName"));
+          continue;
+        }
+        try {
+          item.put("data", decrypt(key, item.getString("data")));
+          item.put("decrypted", true);
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+          item.put("error", e.toString());
+        }
+      }
+      return note;
+    } catch (JSONException e) {
+      JSObject result = new JSObject();
+      result.put("error", e.toString());
+      return result;
+    }
+  }
+
+  static String decrypt(Key key, String data) throws GeneralSecurityException, IOException {
+    byte[] plain = decryptBytes(key, data);
+    if (plain.length > 4 && plain[0] == 0 && plain[1] == 0 && plain[2] == 0 && plain[3] == 1) {
+      return utf8(gunzip(plain, 4));
+    }
+    return utf8(plain);
+  }
+
+  static byte[] decryptBytes(Key key, String data) throws GeneralSecurityException {
+    byte[] combined = Base64.getMimeDecoder().decode(data);
+    boolean gcm = GCM.equals(key.algorithm);
+    int ivSize = gcm ? 12 : 16;
+    if (combined.length < ivSize) {
+      throw new GeneralSecurityException("Ciphertext shorter than its iv");
+    }
+    Cipher cipher = gcm ? GCM_CIPHER.get() : CBC_CIPHER.get();
+    if (gcm) {
+      cipher.init(Cipher.DECRYPT_MODE, key.spec, new GCMParameterSpec(128, combined, 0, ivSize));
+    } else {
+      cipher.init(Cipher.DECRYPT_MODE, key.spec, new IvParameterSpec(combined, 0, ivSize));
+    }
+    return cipher.doFinal(combined, ivSize, combined.length - ivSize);
+  }
+
+  private static byte[] gunzip(byte[] data, int offset) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * 4);
+    try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(data, offset, data.length - offset))) {
+      byte[] buffer = new byte[16 * 1024];
+      int count;
+      while ((count = input.read(buffer)) > 0) {
+        output.write(buffer, 0, count);
+      }
+    }
+    return output.toByteArray();
+  }
+
+  // TextDecoder drops a leading byte order mark and replaces invalid sequences, as does this
+  private static String utf8(byte[] bytes) {
+    int start = bytes.length >= 3 && bytes[0] == (byte) 0xef && bytes[1] == (byte) 0xbb && bytes[2] == (byte) 0xbf ? 3 : 0;
+    return new String(bytes, start, bytes.length - start, StandardCharsets.UTF_8);
+  }
+
+  private static Cipher cipher(String transformation) {
+    try {
+      return Cipher.getInstance(transformation);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    _keys.clear();
+    _pool.shutdownNow();
+  }
+}
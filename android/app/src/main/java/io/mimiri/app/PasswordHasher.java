@@ -0,0 +1,167 @@
+package io.mimiri.app;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// Native counterpart of src/services/password-hasher.ts, producing the same uppercase hex for
+// hashPassword (PBKDF2-SHA512, 2048 bits) and computeResponse (HMAC-SHA512 over the challenge). The
+// 2048 bit output is four independent PBKDF2 blocks, so each block is derived on its own thread.
+class PasswordHasher {
+  private static final int BITS = 2048;
+  private static final int BLOCK = 64;
+  private static final byte[] REPLACEMENT = { (byte) 0xef, (byte) 0xbf, (byte) 0xbd };
+  private static final ExecutorService EXECUTOR;
+
+  static {
+    AtomicInteger counter = new AtomicInteger();
+    // grows on demand, a hash waiting for its blocks can never starve them of a thread
+    EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+      Thread thread = new Thread(runnable, "mimiri-hash-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  // blocks the caller until the four blocks derived on the hashing threads are done
+  static String hashPassword(String password, String salt, String algorithm, int iterations) throws GeneralSecurityException, InterruptedException {
+    String[] parts = algorithm.split(";", -1);
+    if (parts.length < 2 || !parts[0].equals("PBKDF2") || !parts[1].equals("SHA512")) {
+      throw new GeneralSecurityException("Unsupported Algorithm " + algorithm);
+    }
+    if (iterations < 1) {
+      throw new GeneralSecurityException("Unsupported iterations " + iterations);
+    }
+    byte[] key = utf8(password);
+    byte[] saltBytes = fromHex(salt);
+    byte[] result = new byte[BITS / 8];
+    int blocks = result.length / BLOCK;
+    List<Future<?>> futures = new ArrayList<>(blocks);
+    for (int i = 1; i <= blocks; i++) {
+      int index = i;
+      futures.add(EXECUTOR.submit(() -> {
+        deriveBlock(key, saltBytes, iterations, index, result);
+        return null;
+      }));
+    }
+    try {
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      return HashUtil.toHex(result).toUpperCase(Locale.ROOT);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof GeneralSecurityException) {
+        throw (GeneralSecurityException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      // stops the other blocks when one failed or the caller was interrupted
+      for (Future<?> future : futures) {
+        future.cancel(true);
+      }
+      // no key material is left behind on the heap, whichever way the hash ended
+      Arrays.fill(key, (byte) 0);
+      Arrays.fill(result, (byte) 0);
+    }
+  }
+
+  static String computeResponse(String passwordHash, String challenge) throws GeneralSecurityException {
+    Mac mac = hmac(fromHex(passwordHash));
+    return HashUtil.toHex(mac.doFinal(fromHex(challenge))).toUpperCase(Locale.ROOT);
+  }
+
+  // T_index = U_1 ^ ... ^ U_c, written to its slot in result. U is digested in place so the loop
+  // does not allocate.
+  private static void deriveBlock(byte[] key, byte[] salt, int iterations, int index, byte[] result) throws GeneralSecurityException {
+    Mac mac = hmac(key);
+    byte[] u = new byte[BLOCK];
+    byte[] t = new byte[BLOCK];
+    try {
+      mac.update(salt);
+      mac.update(new byte[] { (byte) (index >>> 24), (byte) (index >>> 16), (byte) (index >>> 8), (byte) index });
+      mac.doFinal(u, 0);
+      System.arraycopy(u, 0, t, 0, BLOCK);
+      for (int i = 1; i < iterations; i++) {
+        if ((i & 0x3ff) == 0 && Thread.currentThread().isInterrupted()) {
+          return;
+        }
+        mac.update(u);
+        mac.doFinal(u, 0);
+        for (int j = 0; j < BLOCK; j++) {
+          t[j] ^= u[j];
+        }
+      }
+      System.arraycopy(t, 0, result, (index - 1) * BLOCK, BLOCK);
+    } finally {
+      Arrays.fill(u, (byte) 0);
+      Arrays.fill(t, (byte) 0);
+    }
+  }
+
+  private static Mac hmac(byte[] key) throws GeneralSecurityException {
+    Mac mac = Mac.getInstance("HmacSHA512");
+    // HMAC zero pads the key to the block size, so an empty key is the same as a single zero byte,
+    // which SecretKeySpec accepts
+    mac.init(new SecretKeySpec(key.length > 0 ? key : new byte[1], "HmacSHA512"));
+    return mac;
+  }
+
+  // same bytes as TextEncoder, lone surrogates become U+FFFD
+  static byte[] utf8(String value) {
+    CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE)
+      .replaceWith(REPLACEMENT);
+    try {
+      ByteBuffer buffer = encoder.encode(CharBuffer.wrap(value));
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      return bytes;
+    } catch (CharacterCodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  // same pairs as the /[\da-f]{2}/gi scan in hex-base64.ts fromHex, anything else is skipped
+  static byte[] fromHex(String hex) {
+    byte[] bytes = new byte[hex.length() / 2];
+    int count = 0;
+    int i = 0;
+    while (i + 1 < hex.length()) {
+      char high = hex.charAt(i);
+      char low = hex.charAt(i + 1);
+      if (isAsciiHex(high) && isAsciiHex(low)) {
+        bytes[count++] = (byte) ((Character.digit(high, 16) << 4) | Character.digit(low, 16));
+        i += 2;
+      } else {
+        i++;
+      }
+    }
+    if (count == 0) {
+      throw new IllegalArgumentException("No hex digits in input");
+    }
+    return count == bytes.length ? bytes : Arrays.copyOf(bytes, count);
+  }
+
+  private static boolean isAsciiHex(char c) {
+    return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+  }
+}
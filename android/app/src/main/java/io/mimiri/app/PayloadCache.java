@@ -0,0 +1,124 @@
+package io.mimiri.app;
+
+import android.content.ComponentCallbacks2;
+import android.util.LruCache;
+
+import com.getcapacitor.JSObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Byte-weighted LRU of stored JSON text for mimer_note and mimer_key rows, keyed by id.
+// Reads that miss capture a stamp before going to SQLite and only fill the cache if no write
+// happened in between, so a slow reader can never put back a value a writer just replaced.
+public class PayloadCache {
+  private static final String NOTE_PREFIX = "n:";
+  private static final String KEY_PREFIX = "k:";
+
+  private static class Entry {
+    final String userId;
+    final String json;
+
+    Entry(String userId, String json) {
+      this.userId = userId;
+      this.json = json;
+    }
+  }
+
+  private final LruCache<String, Entry> _entries;
+  private final AtomicLong _hits = new AtomicLong();
+  private final AtomicLong _misses = new AtomicLong();
+  private long _stamp = 0;
+
+  public PayloadCache(int maxBytes) {
+    _entries = new LruCache<>(maxBytes) {
+      @Override
+      protected int sizeOf(String key, Entry value) {
+        // java strings are UTF-16, so two bytes per char plus the key
+        return (key.length() + value.json.length()) * 2;
+      }
+    };
+  }
+
+  public String getNote(String id) {
+    Entry entry = _entries.get(NOTE_PREFIX + id);
+    return count(entry != null ? entry.json : null);
+  }
+
+  public String getKey(String userId, String id) {
+    Entry entry = _entries.get(KEY_PREFIX + id);
+    return count(entry != null && entry.userId.equals(userId) ? entry.json : null);
+  }
+
+  public synchronized long stamp() {
+    return _stamp;
+  }
+
+  public synchronized void fillNote(String id, String json, long stamp) {
+    if (stamp == _stamp) {
+      _entries.put(NOTE_PREFIX + id, new Entry(null, json));
+    }
+  }
+
+  public synchronized void fillKey(String userId, String id, String json, long stamp) {
+    if (stamp == _stamp) {
+      _entries.put(KEY_PREFIX + id, new Entry(userId, json));
+    }
+  }
+
+  public synchronized void putNote(String id, String json) {
+    _stamp++;
+    _entries.put(NOTE_PREFIX + id, new Entry(null, json));
+  }
+
+  public synchronized void putKey(String userId, String id, String json) {
+    _stamp++;
+    _entries.put(KEY_PREFIX + id, new Entry(userId, json));
+  }
+
+  public synchronized void removeNote(String id) {
+    _stamp++;
+    _entries.remove(NOTE_PREFIX + id);
+  }
+
+  public synchronized void removeKey(String id) {
+    _stamp++;
+    _entries.remove(KEY_PREFIX + id);
+  }
+
+  public synchronized void clear() {
+    _stamp++;
+    _entries.evictAll();
+  }
+
+  public void onTrimMemory(int level) {
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+      clear();
+    } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+      _entries.trimToSize(_entries.maxSize() / 2);
+    }
+  }
+
+  public JSObject stats() {
+    JSObject result = new JSObject();
+    result.put("hits", _hits.get());
+    result.put("misses", _misses.get());
+    result.put("evictions", _entries.evictionCount());
+    result.put("bytes", _entries.size());
+    result.put("maxBytes", _entries.maxSize());
+    return result;
+  }
+
+  public void resetStats() {
+    _hits.set(0);
+    _misses.set(0);
+  }
+
+  private String count(String json) {
+    if (json != null) {
+      _hits.incrementAndGet();
+    } else {
+      _misses.incrementAndGet();
+    }
+    return json;
+  }
+}
@@ -0,0 +1,317 @@
+package io.mimiri.app;
+
+import com.getcapacitor.Bridge;
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per plugin method counters shared by all plugins for the process lifetime. Every @PluginMethod opens
+// a Span and resolves or rejects through it, so latency covers work handed to other threads. Errors
+// that are logged and swallowed still count through Span.error. Recording is a few atomic adds.
+class PluginMetrics {
+  // latency buckets are powers of two in milliseconds, the last one is open ended
+  static final int BUCKETS = 16;
+  private static final Map<String, Method> METHODS = new ConcurrentHashMap<>();
+  private static final Object DUMP_LOCK = new Object();
+  private static ScheduledExecutorService _dumper;
+  private static ScheduledFuture<?> _dump;
+  private static final ArrayDeque<JSObject> _ring = new ArrayDeque<>();
+
+  private final String _plugin;
+
+  private PluginMetrics(String plugin) {
+    _plugin = plugin;
+  }
+
+  static PluginMetrics forPlugin(String plugin) {
+    return new PluginMetrics(plugin);
+  }
+
+  Span start(PluginCall call) {
+    String name = _plugin + "." + call.getMethodName();
+    Method method = METHODS.get(name);
+    if (method == null) {
+      method = METHODS.computeIfAbsent(name, key -> new Method());
+    }
+    return new Span(method, call);
+  }
+
+  static class Method {
+    final LongAdder calls = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder totalNanos = new LongAdder();
+    final AtomicLong maxNanos = new AtomicLong();
+    final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    final LongAdder bytes = new LongAdder();
+    final AtomicLong maxBytes = new AtomicLong();
+    final LongAdder rows = new LongAdder();
+
+    void record(long nanos, boolean error, long payload, long touched) {
+      calls.increment();
+      if (error) {
+        errors.increment();
+      }
+      totalNanos.add(nanos);
+      maxNanos.accumulateAndGet(nanos, Math::max);
+      histogram.incrementAndGet(bucket(nanos));
+      if (payload > 0) {
+        bytes.add(payload);
+        maxBytes.accumulateAndGet(payload, Math::max);
+      }
+      rows.add(touched);
+    }
+
+    // clears the counters in place, spans still in flight keep recording into this instance
+    void reset() {
+      calls.reset();
+      errors.reset();
+      totalNanos.reset();
+      maxNanos.set(0);
+      for (int i = 0; i < BUCKETS; i++) {
+        histogram.set(i, 0);
+      }
+      bytes.reset();
+      maxBytes.set(0);
+      rows.reset();
+    }
+
+    JSObject toJson() {
+      long count = calls.sum();
+      JSObject result = new JSObject();
+      result.put("calls", count);
+      result.put("errors", errors.sum());
+      result.put("avgMs", count > 0 ? totalNanos.sum() / count / 1e6 : 0.0);
+      result.put("maxMs", maxNanos.get() / 1e6);
+      long[] counts = new long[BUCKETS];
+      JSArray histogram = new JSArray();
+      for (int i = 0; i < BUCKETS; i++) {
+        counts[i] = this.histogram.get(i);
+        histogram.put(counts[i]);
+      }
+      result.put("histogram", histogram);
+      result.put("p50Ms", percentile(counts, 0.50));
+      result.put("p95Ms", percentile(counts, 0.95));
+      result.put("p99Ms", percentile(counts, 0.99));
+      result.put("bytes", bytes.sum());
+      result.put("maxBytes", maxBytes.get());
+      result.put("rows", rows.sum());
+      return result;
+    }
+  }
+
+  // bucket i holds calls that took less than 2^i ms (bucket 0 is below 1 ms), the last one the rest
+  static int bucket(long nanos) {
+    long ms = nanos / 1_000_000;
+    int bucket = ms == 0 ? 0 : 64 - Long.numberOfLeadingZeros(ms);
+    return Math.min(bucket, BUCKETS - 1);
+  }
+
+  // upper bound of the bucket holding the given fraction of calls, -1 when the open bucket is reached
+  static long percentile(long[] counts, double fraction) {
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long target = (long) Math.ceil(total * fraction);
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= target) {
+        return i == counts.length - 1 ? -1 : 1L << i;
+      }
+    }
+    return -1;
+  }
+
+  // Tracks one call from the method entry until it is resolved or rejected, recorded once. A call kept
+  // alive for several results (decryptNotes) is recorded when released.
+  // Encoded UTF-8 size of text, without encoding it. Unpaired surrogates count as the single '?' byte
+  // String.getBytes would write for them.
+  static long utf8Length(CharSequence text) {
+    long length = 0;
+    int count = text.length();
+    for (int i = 0; i < count; i++) {
+      char ch = text.charAt(i);
+      if (ch < 0x80) {
+        length++;
+      } else if (ch < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(ch) && i + 1 < count && Character.isLowSurrogate(text.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(ch)) {
+        length++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  static class Span {
+    private final Method _method;
+    private final PluginCall _call;
+    private final long _start = System.nanoTime();
+    private final AtomicBoolean _done = new AtomicBoolean();
+    private volatile boolean _error;
+    private final AtomicLong _bytes = new AtomicLong();
+    private final AtomicLong _rows = new AtomicLong();
+
+    Span(Method method, PluginCall call) {
+      _method = method;
+      _call = call;
+    }
+
+    PluginCall call() {
+      return _call;
+    }
+
+    void bytes(long count) {
+      _bytes.addAndGet(count);
+    }
+
+    // counts text by its UTF-8 size rather than its UTF-16 length
+    void bytes(CharSequence text) {
+      _bytes.addAndGet(utf8Length(text));
+    }
+
+    void rows(long count) {
+      _rows.addAndGet(count);
+    }
+
+    // the existing log line, plus the error count even when the call still resolves
+    void error(Exception e) {
+      System.out.println(e.toString());
+      _error = true;
+    }
+
+    void resolve() {
+      _call.resolve();
+      finish();
+    }
+
+    void resolve(JSObject result) {
+      _call.resolve(result);
+      if (!_call.isKeptAlive()) {
+        finish();
+      }
+    }
+
+    void reject(String message) {
+      _error = true;
+      _call.reject(message);
+      finish();
+    }
+
+    void release(Bridge bridge) {
+      _call.release(bridge);
+      finish();
+    }
+
+    private void finish() {
+      if (_done.compareAndSet(false, true)) {
+        _method.record(System.nanoTime() - _start, _error, _bytes.get(), _rows.get());
+      }
+    }
+  }
+
+  static JSObject snapshot() {
+    JSObject methods = new JSObject();
+    for (Map.Entry<String, Method> entry : new TreeMap<>(METHODS).entrySet()) {
+      // methods not called since the last reset are left out
+      if (entry.getValue().calls.sum() > 0) {
+        methods.put(entry.getKey(), entry.getValue().toJson());
+      }
+    }
+    JSObject result = new JSObject();
+    result.put("time", System.currentTimeMillis());
+    result.put("methods", methods);
+    return result;
+  }
+
+  // Methods stay registered, clearing the map would orphan the spans of calls still running
+  static void reset() {
+    for (Method method : METHODS.values()) {
+      method.reset();
+    }
+  }
+
+  // Appends a snapshot to file every intervalMs, keeping the last entries snapshots so the file stays
+  // bounded. An interval of 0 stops dumping.
+  static void dump(File file, long intervalMs, int entries) {
+    synchronized (DUMP_LOCK) {
+      if (_dump != null) {
+        _dump.cancel(false);
+        _dump = null;
+      }
+      if (intervalMs <= 0) {
+        return;
+      }
+      if (_dumper == null) {
+        _dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+          Thread thread = new Thread(runnable, "mimiri-metrics");
+          thread.setDaemon(true);
+          thread.setPriority(Thread.MIN_PRIORITY);
+          return thread;
+        });
+      }
+      int capacity = Math.max(1, entries);
+      _dump = _dumper.scheduleWithFixedDelay(() -> {
+        try {
+          writeRing(file, snapshot(), capacity);
+        } catch (Exception e) {
+          System.out.println(e.toString());
+        }
+      }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  static void writeRing(File file, JSObject snapshot, int capacity) throws IOException, JSONException {
+    List<JSObject> entries;
+    synchronized (_ring) {
+      if (_ring.isEmpty() && file.exists()) {
+        // continue the ring left by an earlier process
+        String text = FileUtil.readAllText(file);
+        if (text != null) {
+          try {
+            JSONArray stored = new JSONArray(text);
+            for (int i = 0; i < stored.length(); i++) {
+              _ring.addLast(JSObject.fromJSONObject(stored.getJSONObject(i)));
+            }
+          } catch (JSONException e) {
+            System.out.println(e.toString());
+          }
+        }
+      }
+      _ring.addLast(snapshot);
+      while (_ring.size() > capacity) {
+        _ring.removeFirst();
+      }
+      entries = new ArrayList<>(_ring);
+    }
+    FileUtil.writeAtomic(file, new JSONArray(entries).toString());
+  }
+}
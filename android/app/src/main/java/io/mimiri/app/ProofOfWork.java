@@ -0,0 +1,131 @@
+package io.mimiri.app;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Solves the same puzzle as src/services/proof-of-work.ts: find a "time:prevHash:nonce:value" message
+// whose SHA-256 starts with the requested number of zero bits, and return "hash::message". Each worker
+// takes every threads-th nonce and chains its own previous hash, so the messages have exactly the shape
+// the JS solver produces. The inner loop formats the message into a reused byte buffer and digests into
+// a reused array, nothing is allocated until a solution is found.
+class ProofOfWork {
+  private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+  private static final int HASH_LENGTH = 32;
+
+  private final AtomicBoolean _cancelled = new AtomicBoolean();
+  private final AtomicReference<String> _result = new AtomicReference<>();
+
+  void cancel() {
+    _cancelled.set(true);
+  }
+
+  boolean isCancelled() {
+    return _cancelled.get();
+  }
+
+  // blocks until solved, returns null when cancelled
+  String compute(String value, int entropyBits, int threads) throws InterruptedException {
+    if (entropyBits < 0 || entropyBits > HASH_LENGTH * 8) {
+      throw new IllegalArgumentException("Unsupported entropy bits " + entropyBits);
+    }
+    byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+    int count = Math.max(1, threads);
+    if (count == 1) {
+      solve(valueBytes, entropyBits, 0, 1);
+      return _result.get();
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(count);
+    try {
+      List<Future<?>> futures = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        int first = i;
+        futures.add(pool.submit(() -> solve(valueBytes, entropyBits, first, count)));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      cancel();
+      throw e;
+    } catch (ExecutionException e) {
+      cancel();
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+    return _result.get();
+  }
+
+  private void solve(byte[] value, int entropyBits, long nonce, int step) {
+    MessageDigest digest = HashUtil.sha256();
+    // 20 digits is enough for any long, the hash is 64 hex characters
+    byte[] message = new byte[20 + 1 + HASH_LENGTH * 2 + 1 + 20 + 1 + value.length];
+    byte[] hash = new byte[HASH_LENGTH];
+    boolean chained = false;
+    int fullBytes = entropyBits / 8;
+    int mask = 0xff & (0xff << (8 - (entropyBits - fullBytes * 8)));
+    try {
+      while (_result.get() == null && !_cancelled.get()) {
+        int length = writeLong(message, 0, System.currentTimeMillis());
+        message[length++] = ':';
+        if (chained) {
+          for (int i = 0; i < HASH_LENGTH; i++) {
+            message[length++] = HEX[(hash[i] >> 4) & 0xf];
+            message[length++] = HEX[hash[i] & 0xf];
+          }
+        } else {
+          message[length++] = '-';
+        }
+        message[length++] = ':';
+        length = writeLong(message, length, nonce);
+        message[length++] = ':';
+        System.arraycopy(value, 0, message, length, value.length);
+        length += value.length;
+        nonce += step;
+
+        digest.update(message, 0, length);
+        digest.digest(hash, 0, HASH_LENGTH);
+        chained = true;
+        if (matches(hash, fullBytes, mask)) {
+          String solution = HashUtil.toHex(hash) + "::" + new String(message, 0, length, StandardCharsets.UTF_8);
+          _result.compareAndSet(null, solution);
+          return;
+        }
+      }
+    } catch (DigestException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static boolean matches(byte[] hash, int fullBytes, int mask) {
+    for (int i = 0; i < fullBytes; i++) {
+      if (hash[i] != 0) {
+        return false;
+      }
+    }
+    return fullBytes == hash.length || (hash[fullBytes] & mask) == 0;
+  }
+
+  // writes the decimal digits of a non negative value at offset, returns the offset after them
+  static int writeLong(byte[] buffer, int offset, long value) {
+    int digits = 1;
+    for (long rest = value / 10; rest > 0; rest /= 10) {
+      digits++;
+    }
+    int end = offset + digits;
+    for (int i = end - 1; i >= offset; i--) {
+      buffer[i] = (byte) ('0' + (value % 10));
+      value /= 10;
+    }
+    return end;
+  }
+}
@@ -6,45 +6,34 @@ import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.PrintWriter;
 
 @CapacitorPlugin(name = "Settings")
 public class SettingsPlugin extends Plugin {
+  private final PluginMetrics _metrics = PluginMetrics.forPlugin("Settings");
 
   @PluginMethod()
   public void load(PluginCall call) {
-    File file = new File(getContext().getFilesDir().toString(), "settings.config");
-    StringBuilder json = new StringBuilder();
+    PluginMetrics.Span span = _metrics.start(call);
+    File file = new File(getContext().getFilesDir(), "settings.config");
     if (file.exists()) {
-      try {
-        BufferedReader reader = new BufferedReader(new FileReader(file));
-        String line = reader.readLine();
-        while (line != null) {
-          json.append(line);
-          line = reader.readLine();
-        }
-        call.resolve(new JSObject(json.toString()));
+      JSObject settings = FileUtil.readJson(file);
+      if (settings != null) {
+        span.resolve(settings);
         return;
-      } catch (Exception e) {
-        System.out.println(e.toString());
       }
     }
-    call.resolve(new JSObject());
+    span.resolve(new JSObject());
   }
 
   @PluginMethod()
   public void save(PluginCall call) {
-    try {
-      try (PrintWriter out = new PrintWriter(new File(getContext().getFilesDir(), "settings.config"))) {
-        out.println(call.getObject("settings").toString(2));
-      }
-    } catch (Exception e) {
-      System.out.println(e.toString());
+    PluginMetrics.Span span = _metrics.start(call);
+    JSObject settings = call.getObject("settings");
+    if (settings != null) {
+      FileUtil.writeJson(new File(getContext().getFilesDir(), "settings.config"), settings);
     }
-    call.resolve();
+    span.resolve();
   }
 
 
@@ -0,0 +1,134 @@
+package io.mimiri.app;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+// Writes a row in a single statement and skips the write when the stored content hash already matches.
+// The first key column is the conflict target, any further key columns must match for an update to apply.
+// UPSERT needs SQLite 3.24 (Android 11), older devices fall back to INSERT OR IGNORE plus a hash-guarded UPDATE.
+class UpsertStatement implements AutoCloseable {
+  static final boolean UPSERT_SUPPORTED = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R;
+
+  private final SQLiteStatement _upsert;
+  private final SQLiteStatement _insert;
+  private final SQLiteStatement _update;
+  private final int _keyCount;
+  private final int _valueCount;
+
+  UpsertStatement(SQLiteDatabase db, String table, String[] keyColumns, String[] valueColumns) {
+    _keyCount = keyColumns.length;
+    _valueCount = valueColumns.length;
+
+    StringBuilder columns = new StringBuilder();
+    StringBuilder params = new StringBuilder();
+    for (String column : keyColumns) {
+      columns.append(column).append(", ");
+      params.append("?, ");
+    }
+    for (String column : valueColumns) {
+      columns.append(column).append(", ");
+      params.append("?, ");
+    }
+    columns.append("hash");
+    params.append("?");
+
+    if (UPSERT_SUPPORTED) {
+      StringBuilder sql = new StringBuilder();
+      sql.append("INSERT INTO ").append(table).append(" (").append(columns).append(") VALUES (").append(params).append(")");
+      sql.append(" ON CONFLICT(").append(keyColumns[0]).append(") DO UPDATE SET ");
+      for (String column : valueColumns) {
+        sql.append(column).append(" = excluded.").append(column).append(", ");
+      }
+      sql.append("hash = excluded.hash WHERE ").append(table).append(".hash IS NOT excluded.hash");
+      for (int i = 1; i < keyColumns.length; i++) {
+        sql.append(" AND ").append(table).append(".").append(keyColumns[i]).append(" = excluded.").append(keyColumns[i]);
+      }
+      _upsert = db.compileStatement(sql.toString());
+      _insert = null;
+      _update = null;
+    } else {
+      _upsert = null;
+      _insert = db.compileStatement("INSERT OR IGNORE INTO " + table + " (" + columns + ") VALUES (" + params + ")");
+      StringBuilder sql = new StringBuilder();
+      sql.append("UPDATE ").append(table).append(" SET ");
+      for (String column : valueColumns) {
+        sql.append(column).append(" = ?, ");
+      }
+      sql.append("hash = ? WHERE ");
+      for (String column : keyColumns) {
+        sql.append(column).append(" = ? AND ");
+      }
+      sql.append("hash IS NOT ?");
+      _update = db.compileStatement(sql.toString());
+    }
+  }
+
+  void execute(String[] keys, String[] values) {
+    execute(keys, values, HashUtil.sha256(values));
+  }
+
+  // values may be String, byte[] or Long, the caller supplies the hash of the logical content
+  void execute(String[] keys, Object[] values, byte[] hash) {
+    if (keys.length != _keyCount || values.length != _valueCount) {
+      throw new IllegalArgumentException("UpsertStatement expected " + _keyCount + " keys and " + _valueCount + " values");
+    }
+    if (_upsert != null) {
+      int index = 1;
+      for (String key : keys) {
+        _upsert.bindString(index++, key);
+      }
+      for (Object value : values) {
+        bind(_upsert, index++, value);
+      }
+      _upsert.bindBlob(index, hash);
+      _upsert.executeInsert();
+      return;
+    }
+
+    int index = 1;
+    for (String key : keys) {
+      _insert.bindString(index++, key);
+    }
+    for (Object value : values) {
+      bind(_insert, index++, value);
+    }
+    _insert.bindBlob(index, hash);
+    // executeInsert reports -1 when the row already existed and the insert was ignored
+    if (_insert.executeInsert() == -1) {
+      index = 1;
+      for (Object value : values) {
+        bind(_update, index++, value);
+      }
+      _update.bindBlob(index++, hash);
+      for (String key : keys) {
+        _update.bindString(index++, key);
+      }
+      _update.bindBlob(index, hash);
+      _update.executeUpdateDelete();
+    }
+  }
+
+  private static void bind(SQLiteStatement statement, int index, Object value) {
+    if (value instanceof byte[]) {
+      statement.bindBlob(index, (byte[]) value);
+    } else if (value instanceof Long) {
+      statement.bindLong(index, (Long) value);
+    } else {
+      statement.bindString(index, (String) value);
+    }
+  }
+
+  @Override
+  public void close() {
+    if (_upsert != null) {
+      _upsert.close();
+    }
+    if (_insert != null) {
+      _insert.close();
+    }
+    if (_update != null) {
+      _update.close();
+    }
+  }
+}
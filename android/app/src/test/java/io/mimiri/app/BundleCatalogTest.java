@@ -0,0 +1,92 @@
+package io.mimiri.app;
+
+import static org.junit.Assert.*;
+
+import com.getcapacitor.JSObject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+public class BundleCatalogTest {
+  private File bundles;
+
+  @Before
+  public void setUp() throws IOException {
+    bundles = Files.createTempDirectory("bundles").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.deleteDir(bundles);
+  }
+
+  @Test
+  public void rebuildsFromBundleDirectoriesWhenMissing() {
+    install("1.0.0");
+    install("2.0.0");
+    assertEquals(2, new BundleCatalog(bundles).bundles().size());
+    assertTrue(new File(bundles, BundleCatalog.FILE).exists());
+  }
+
+  @Test
+  public void persistsIncrementalChanges() {
+    BundleCatalog catalog = new BundleCatalog(bundles);
+    install("1.0.0");
+    catalog.put("1.0.0", info("1.0.0"));
+    JSObject good = catalog.get("1.0.0");
+    good.put("good", true);
+    catalog.put("1.0.0", good);
+
+    BundleCatalog reloaded = new BundleCatalog(bundles);
+    assertEquals(Boolean.TRUE, reloaded.get("1.0.0").getBoolean("good", false));
+  }
+
+  @Test
+  public void rebuildsWhenDirectoriesChangedBehindItsBack() {
+    BundleCatalog catalog = new BundleCatalog(bundles);
+    install("1.0.0");
+    catalog.put("1.0.0", info("1.0.0"));
+    // as if the app died after publishing a bundle but before recording it
+    install("2.0.0");
+    assertNotNull(new BundleCatalog(bundles).get("2.0.0"));
+  }
+
+  @Test
+  public void returnsCopies() {
+    BundleCatalog catalog = new BundleCatalog(bundles);
+    install("1.0.0");
+    catalog.put("1.0.0", info("1.0.0"));
+    catalog.get("1.0.0").put("active", true);
+    assertFalse(catalog.get("1.0.0").has("active"));
+  }
+
+  @Test
+  public void directoryNameIsTheVersion() {
+    File dir = new File(bundles, "2.0.0");
+    assertTrue(dir.mkdirs());
+    FileUtil.writeJson(new File(dir, "info.json"), info("1.9.0"));
+    BundleCatalog catalog = new BundleCatalog(bundles);
+    assertEquals("2.0.0", catalog.get("2.0.0").getString("version"));
+    assertEquals("2.0.0", catalog.bundles().get(0).getString("version"));
+
+    catalog.put("2.0.0", info("1.9.0"));
+    assertEquals("2.0.0", new BundleCatalog(bundles).get("2.0.0").getString("version"));
+  }
+
+  private void install(String version) {
+    File dir = new File(bundles, version);
+    assertTrue(dir.mkdirs());
+    FileUtil.writeJson(new File(dir, "info.json"), info(version));
+  }
+
+  private static JSObject info(String version) {
+    JSObject info = new JSObject();
+    info.put("version", version);
+    return info;
+  }
+}
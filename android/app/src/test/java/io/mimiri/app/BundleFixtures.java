@@ -0,0 +1,48 @@
+package io.mimiri.app;
+
+import com.getcapacitor.JSObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.zip.GZIPOutputStream;
+
+// Shared setup for the bundle install, verifier and warmer tests.
+final class BundleFixtures {
+  private BundleFixtures() {
+  }
+
+  // bundles directory for one test, removed with FileUtil.deleteDir in tearDown
+  static File tempBundles() throws IOException {
+    return Files.createTempDirectory("bundles").toFile();
+  }
+
+  // Installs and commits version under bundles, files are path and content pairs. Returns its directory.
+  static File install(File bundles, String version, String... files) throws Exception {
+    File dir = new File(bundles, version);
+    BundleInstall install = new BundleInstall(version, dir);
+    for (int i = 0; i < files.length; i += 2) {
+      install.write(files[i], gzip(files[i + 1]));
+    }
+    install.commit(info(version));
+    return dir;
+  }
+
+  static JSObject info(String version) {
+    JSObject info = new JSObject();
+    info.put("version", version);
+    return info;
+  }
+
+  // content in the base64 gzip form the web layer sends
+  static String gzip(String content) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+      gzip.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+    return Base64.getEncoder().encodeToString(compressed.toByteArray());
+  }
+}
@@ -0,0 +1,307 @@
+package io.mimiri.app;
+
+import static io.mimiri.app.BundleFixtures.gzip;
+import static io.mimiri.app.BundleFixtures.info;
+import static org.junit.Assert.*;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+public class BundleInstallTest {
+  private File bundles;
+
+  @Before
+  public void setUp() throws IOException {
+    bundles = BundleFixtures.tempBundles();
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.deleteDir(bundles);
+  }
+
+  @Test
+  public void filesStayStagedUntilCommit() throws Exception {
+    File target = new File(bundles, "2.0.0");
+    BundleInstall install = new BundleInstall("2.0.0", target);
+    install.write("index.html", gzip("<html>2</html>"));
+    assertFalse(target.exists());
+
+    install.commit(info("2.0.0"));
+    assertEquals("<html>2</html>", read(new File(target, "index.html")));
+    assertTrue(new File(target, "info.json").exists());
+    assertFalse(install.dir().exists());
+  }
+
+  @Test
+  public void reinstallReplacesExistingVersion() throws Exception {
+    File target = new File(bundles, "2.0.0");
+    BundleInstall first = new BundleInstall("2.0.0", target);
+    first.write("index.html", gzip("first"));
+    first.write("old.js", gzip("old"));
+    first.commit(info("2.0.0"));
+
+    BundleInstall second = new BundleInstall("2.0.0", target);
+    second.write("index.html", gzip("second"));
+    second.commit(info("2.0.0"));
+    assertEquals("second", read(new File(target, "index.html")));
+    assertFalse(new File(target, "old.js").exists());
+    assertEquals(0, new File(bundles, BundleInstall.STAGING).list().length);
+  }
+
+  @Test
+  public void abortLeavesInstalledVersionAlone() throws Exception {
+    File target = new File(bundles, "2.0.0");
+    BundleInstall first = new BundleInstall("2.0.0", target);
+    first.write("index.html", gzip("first"));
+    first.commit(info("2.0.0"));
+
+    BundleInstall second = new BundleInstall("2.0.0", target);
+    second.write("index.html", gzip("second"));
+    second.abort();
+    assertEquals("first", read(new File(target, "index.html")));
+  }
+
+  @Test
+  public void cancelStopsFurtherChunks() throws Exception {
+    BundleInstall install = new BundleInstall("2.0.0", new File(bundles, "2.0.0"));
+    String packed = gzip("<html>2</html>");
+    install.append("index.html", packed.substring(0, 8), false);
+    install.cancel();
+    try {
+      install.append("index.html", packed.substring(8), true);
+      fail("expected the cancelled install to refuse the chunk");
+    } catch (BundleInstall.CancelledException e) {
+      // expected
+    }
+    install.abort();
+    assertFalse(install.dir().exists());
+  }
+
+  @Test
+  public void reportsEarliestFailingFile() throws Exception {
+    List<String[]> files = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      files.add(new String[] { "assets/chunk-" + i + ".js", gzip("chunk " + i) });
+    }
+    files.get(10)[1] = "AAAA";
+    files.get(200)[1] = "AAAA";
+    BundleInstall install = new BundleInstall("broken", new File(bundles, "broken"));
+    try {
+      install.writeAll(files, 4);
+      fail("expected extraction to fail");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains(files.get(10)[0]));
+    }
+  }
+
+  @Test
+  public void removeAndCleanStaging() throws Exception {
+    File target = new File(bundles, "2.0.0");
+    BundleInstall install = new BundleInstall("2.0.0", target);
+    install.write("index.html", gzip("x"));
+    install.commit(info("2.0.0"));
+    new BundleInstall("3.0.0", new File(bundles, "3.0.0")).write("index.html", gzip("crashed"));
+
+    BundleInstall.remove(target);
+    assertFalse(target.exists());
+    BundleInstall.cleanStaging(bundles);
+    assertFalse(new File(bundles, BundleInstall.STAGING).exists());
+  }
+
+  @Test
+  public void versionsShareUnchangedFiles() throws Exception {
+    BlobStore blobs = new BlobStore(bundles);
+    File first = new File(bundles, "1.0.0");
+    BundleInstall install = new BundleInstall("1.0.0", first, blobs);
+    install.write("index.html", gzip("shared"));
+    install.write("app.js", gzip("one"));
+    install.commit(info("1.0.0"));
+
+    File second = new File(bundles, "2.0.0");
+    install = new BundleInstall("2.0.0", second, blobs);
+    install.append("index.html", gzip("shared"), true);
+    install.write("app.js", gzip("two"));
+    install.commit(info("2.0.0"));
+
+    assertTrue(Files.isSameFile(new File(first, "index.html").toPath(), new File(second, "index.html").toPath()));
+    assertEquals("two", read(new File(second, "app.js")));
+    assertTrue(new File(second, BlobStore.MANIFEST).exists());
+  }
+
+  @Test
+  public void knownPackedFileIsLinkedWithoutInflating() throws Exception {
+    BlobStore blobs = new BlobStore(bundles);
+    String packed = gzip("shared");
+    BundleInstall install = new BundleInstall("1.0.0", new File(bundles, "1.0.0"), blobs);
+    install.write("index.html", packed);
+    install.commit(info("1.0.0"));
+
+    String hash = blobs.alias(HashUtil.toHex(HashUtil.sha256(packed)));
+    assertNotNull(hash);
+    File target = new File(bundles, "2.0.0");
+    install = new BundleInstall("2.0.0", target, blobs);
+    assertTrue(blobs.link(hash, new File(install.dir(), "probe")));
+    install.write("index.html", packed);
+    install.commit(info("2.0.0"));
+    assertEquals("shared", read(new File(target, "index.html")));
+    assertTrue(Files.isSameFile(new File(target, "probe").toPath(), new File(target, "index.html").toPath()));
+  }
+
+  @Test
+  public void collectRemovesOnlyUnreferencedBlobs() throws Exception {
+    BlobStore blobs = new BlobStore(bundles);
+    BundleInstall install = new BundleInstall("1.0.0", new File(bundles, "1.0.0"), blobs);
+    install.write("index.html", gzip("shared"));
+    install.write("app.js", gzip("one"));
+    install.commit(info("1.0.0"));
+    install = new BundleInstall("2.0.0", new File(bundles, "2.0.0"), blobs);
+    install.write("index.html", gzip("shared"));
+    install.write("app.js", gzip("two"));
+    install.commit(info("2.0.0"));
+
+    BundleInstall pending = new BundleInstall("3.0.0", new File(bundles, "3.0.0"), blobs);
+    pending.write("app.js", gzip("three"));
+
+    BundleInstall.remove(new File(bundles, "1.0.0"));
+    BlobStore.Collected collected = blobs.collect(bundles);
+    assertEquals(1, collected.blobs);
+    assertEquals(3, collected.bytes);
+    assertEquals("shared", read(new File(bundles, "2.0.0/index.html")));
+
+    pending.commit(info("3.0.0"));
+    assertEquals(0, blobs.collect(bundles).blobs);
+  }
+
+  @Test
+  public void deltaRebuildsChangedFilesFromBase() throws Exception {
+    BlobStore blobs = new BlobStore(bundles);
+    File base = new File(bundles, "1.0.0");
+    BundleInstall install = new BundleInstall("1.0.0", base, blobs);
+    install.write("index.html", gzip("<html>unchanged</html>"));
+    install.write("app.js", gzip("console.log('one')"));
+    install.commit(info("1.0.0"));
+
+    JSONArray files = new JSONArray();
+    files.put(new JSONObject().put("path", "index.html").put("hash", hash("<html>unchanged</html>")));
+    files.put(new JSONObject().put("path", "app-2.js").put("from", "app.js").put("hash", hash("console.log('two')"))
+      .put("patch", patch(new Object[] { 0, 13 }, "two')")));
+    files.put(new JSONObject().put("path", "new.css").put("hash", hash("body{}")).put("content", gzip("body{}")));
+
+    File target = new File(bundles, "2.0.0");
+    install = new BundleInstall("2.0.0", target, blobs);
+    install.applyDelta(base, files);
+    install.commit(info("2.0.0"));
+    assertEquals("console.log('two')", read(new File(target, "app-2.js")));
+    assertEquals("body{}", read(new File(target, "new.css")));
+    assertTrue(Files.isSameFile(new File(base, "index.html").toPath(), new File(target, "index.html").toPath()));
+    assertFalse(new File(target, "app.js").exists());
+  }
+
+  @Test
+  public void deltaRejectsHashMismatch() throws Exception {
+    File base = new File(bundles, "1.0.0");
+    BundleInstall install = new BundleInstall("1.0.0", base);
+    install.write("app.js", gzip("console.log('one')"));
+    install.commit(info("1.0.0"));
+
+    JSONArray files = new JSONArray();
+    files.put(new JSONObject().put("path", "app.js").put("hash", hash("console.log('two')"))
+      .put("patch", patch(new Object[] { 0, 13 }, "six')")));
+    install = new BundleInstall("2.0.0", new File(bundles, "2.0.0"));
+    try {
+      install.applyDelta(base, files);
+      fail("expected a hash mismatch");
+    } catch (IOException e) {
+      assertTrue(e.getCause().getMessage().contains("Hash mismatch"));
+    }
+  }
+
+  @Test
+  public void patchRejectsOverlongVarintsAndCopiesPastTheEnd() throws Exception {
+    byte[] overlong = new byte[10];
+    Arrays.fill(overlong, (byte) 0xff);
+    try {
+      BundlePatch.readVarint(new ByteArrayInputStream(overlong));
+      fail("expected the varint to be rejected");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("longer than"));
+    }
+    File base = new File(bundles, "base.js");
+    Files.write(base.toPath(), "console.log('one')".getBytes(StandardCharsets.UTF_8));
+    ByteArrayOutputStream patch = new ByteArrayOutputStream();
+    patch.write(BundlePatch.MAGIC);
+    patch.write(BundlePatch.COPY);
+    BundlePatch.writeVarint(patch, 4);
+    BundlePatch.writeVarint(patch, Long.MAX_VALUE);
+    patch.write(BundlePatch.END);
+    try {
+      BundlePatch.apply(base, new ByteArrayInputStream(patch.toByteArray()), new ByteArrayOutputStream());
+      fail("expected the copy to be rejected");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("past the end"));
+    }
+  }
+
+  @Test
+  public void rejectsFilesThatDoNotMatchTheSentHash() throws Exception {
+    JSONArray files = new JSONArray();
+    files.put(new JSONObject().put("name", "good.js").put("content", gzip("good")).put("hash", hash("good")));
+    files.put(new JSONObject().put("name", "bad.js").put("content", gzip("bad")).put("hash", hash("other")));
+    List<String[]> collected = new ArrayList<>();
+    BundleInstall.collect("", files, collected);
+    BundleInstall install = new BundleInstall("2.0.0", new File(bundles, "2.0.0"));
+    try {
+      install.writeAll(collected, 1);
+      fail("expected a hash mismatch");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("bad.js"));
+    }
+  }
+
+  // ops are { offset, length } copies or String inserts
+  private static String patch(Object... ops) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+      out.write(BundlePatch.MAGIC);
+      for (Object op : ops) {
+        if (op instanceof String) {
+          byte[] bytes = ((String) op).getBytes(StandardCharsets.UTF_8);
+          out.write(BundlePatch.INSERT);
+          BundlePatch.writeVarint(out, bytes.length);
+          out.write(bytes);
+        } else {
+          Object[] copy = (Object[]) op;
+          out.write(BundlePatch.COPY);
+          BundlePatch.writeVarint(out, (Integer) copy[0]);
+          BundlePatch.writeVarint(out, (Integer) copy[1]);
+        }
+      }
+      out.write(BundlePatch.END);
+    }
+    return Base64.getEncoder().encodeToString(compressed.toByteArray());
+  }
+
+  private static String hash(String content) {
+    return HashUtil.toHex(HashUtil.sha256(content));
+  }
+
+  private static String read(File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,124 @@
+package io.mimiri.app;
+
+import static org.junit.Assert.*;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+public class BundleRetentionTest {
+  private File bundles;
+  private BlobStore blobs;
+  private BundleCatalog catalog;
+  private BundleRetention retention;
+  private JSObject config;
+
+  @Before
+  public void setUp() throws IOException {
+    bundles = Files.createTempDirectory("bundles").toFile();
+    blobs = new BlobStore(bundles);
+    catalog = new BundleCatalog(bundles);
+    retention = new BundleRetention(bundles, catalog, blobs, new Object());
+    config = new JSObject();
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.deleteDir(bundles);
+  }
+
+  @Test
+  public void keepsActivePreviousLastGoodAndPending() {
+    config.put("activeVersion", "2.3.0");
+    config.put("previousActiveVersion", "2.2.0");
+    Set<String> keep = BundleRetention.retained(config, Arrays.asList(
+      info("2.0.0", true), info("2.1.0", true), info("2.1.5", false), info("2.2.0", false), info("2.3.0", false), info("2.4.0", false)), "1.0.0");
+    assertTrue(keep.containsAll(Arrays.asList("2.1.0", "2.2.0", "2.3.0", "2.4.0")));
+    assertFalse(keep.contains("2.0.0"));
+    assertFalse(keep.contains("2.1.5"));
+  }
+
+  @Test
+  public void keepsBasesOfRunningDeltas() {
+    config.put("activeVersion", "2.3.0");
+    config.put(BundleRetention.PINNED, new JSONArray(Arrays.asList("2.0.0")));
+    Set<String> keep = BundleRetention.retained(config, Arrays.asList(info("2.0.0", false), info("2.1.0", false), info("2.3.0", false)), "1.0.0");
+    assertTrue(keep.contains("2.0.0"));
+    assertFalse(keep.contains("2.1.0"));
+  }
+
+  @Test
+  public void removesOldestUnprotectedVersionsUntilWithinBudget() throws Exception {
+    for (String version : new String[] { "1.0.0", "1.1.0", "1.2.0", "1.3.0" }) {
+      install(version, 10_000);
+    }
+    config.put("activeVersion", "1.3.0");
+    config.put("previousActiveVersion", "1.2.0");
+    long used = retention.usage();
+
+    BundleRetention.Report report = retention.sweep(used - 5_000, () -> config);
+    assertEquals(Arrays.asList("1.0.0"), report.removed);
+    assertTrue(report.bytesBefore - report.bytesAfter >= 10_000);
+    assertNull(catalog.get("1.0.0"));
+    assertFalse(new File(bundles, "1.0.0").exists());
+
+    report = retention.sweep(0, () -> config);
+    assertEquals(Arrays.asList("1.1.0"), report.removed);
+    assertNotNull(catalog.get("1.2.0"));
+    assertNotNull(catalog.get("1.3.0"));
+  }
+
+  @Test
+  public void withinBudgetNothingIsRemoved() throws Exception {
+    install("1.0.0", 1000);
+    install("1.1.0", 1000);
+    config.put("activeVersion", "1.1.0");
+    assertTrue(retention.sweep(BundleRetention.DEFAULT_BUDGET, () -> config).removed.isEmpty());
+  }
+
+  @Test
+  public void countsBundleFilesThatAreCopiesOfTheirBlob() throws Exception {
+    install("1.0.0", 10_000);
+    long linked = retention.usage();
+    File file = new File(bundles, "1.0.0/app.js");
+    byte[] content = Files.readAllBytes(file.toPath());
+    // what linkOrCopy leaves behind when hard links are not available
+    Files.delete(file.toPath());
+    Files.write(file.toPath(), content);
+    assertEquals(linked + content.length, retention.usage());
+  }
+
+  private void install(String version, int bytes) throws Exception {
+    byte[] content = new byte[bytes];
+    new Random(version.hashCode()).nextBytes(content);
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+      gzip.write(content);
+    }
+    BundleInstall install = new BundleInstall(version, new File(bundles, version), blobs);
+    install.write("app.js", Base64.getEncoder().encodeToString(compressed.toByteArray()));
+    JSObject info = info(version, false);
+    install.commit(info);
+    catalog.put(version, info);
+  }
+
+  private static JSObject info(String version, boolean good) {
+    JSObject info = new JSObject();
+    info.put("version", version);
+    info.put("good", good);
+    return info;
+  }
+}
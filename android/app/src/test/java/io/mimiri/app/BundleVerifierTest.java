@@ -0,0 +1,57 @@
+package io.mimiri.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class BundleVerifierTest {
+  private File bundles;
+  private File bundle;
+
+  @Before
+  public void setUp() throws Exception {
+    bundles = BundleFixtures.tempBundles();
+    String[] files = new String[80];
+    for (int i = 0; i < 40; i++) {
+      files[2 * i] = "assets/chunk-" + i + ".js";
+      files[2 * i + 1] = "console.log(" + i + ")";
+    }
+    bundle = BundleFixtures.install(bundles, "2.0.0", files);
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.deleteDir(bundles);
+  }
+
+  @Test
+  public void cleanBundleVerifies() throws Exception {
+    BundleVerifier.Result result = BundleVerifier.verify(bundle, 4);
+    assertTrue(result.ok());
+    assertEquals(40, result.files);
+  }
+
+  @Test
+  public void reportsChangedAndMissingFiles() throws Exception {
+    Files.write(new File(bundle, "assets/chunk-7.js").toPath(), "tampered".getBytes(StandardCharsets.UTF_8));
+    assertTrue(new File(bundle, "assets/chunk-31.js").delete());
+    BundleVerifier.Result result = BundleVerifier.verify(bundle, 4);
+    assertFalse(result.ok());
+    assertEquals(Arrays.asList("assets/chunk-31.js", "assets/chunk-7.js"), result.corrupt);
+  }
+
+  @Test
+  public void bundleWithoutManifestIsNotVerified() throws Exception {
+    assertTrue(new File(bundle, BlobStore.MANIFEST).delete());
+    BundleVerifier.Result result = BundleVerifier.verify(bundle, 4);
+    assertFalse(result.manifest);
+    assertFalse(result.ok());
+  }
+}
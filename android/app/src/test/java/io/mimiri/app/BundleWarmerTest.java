@@ -0,0 +1,68 @@
+package io.mimiri.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class BundleWarmerTest {
+  private static final String INDEX = "<!doctype html><html><head>"
+    + "<script type=\"module\" crossorigin src=\"/assets/index-abc.js\"></script>"
+    + "<link rel=\"modulepreload\" href=\"./assets/vendor-def.js\">"
+    + "<link rel=\"stylesheet\" href=\"/assets/index-ghi.css?v=1\">"
+    + "<link rel=\"preconnect\" href=\"https://example.com\">"
+    + "</head><body><div id=\"app\"></div></body></html>";
+
+  private File bundles;
+  private File bundle;
+
+  @Before
+  public void setUp() throws Exception {
+    bundles = BundleFixtures.tempBundles();
+    bundle = BundleFixtures.install(bundles, "2.0.0",
+      "index.html", INDEX,
+      "assets/index-abc.js", "console.log('index')",
+      "assets/vendor-def.js", "console.log('vendor')",
+      "assets/index-ghi.css", "body{}",
+      "assets/lazy.js", "console.log('lazy')");
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.deleteDir(bundles);
+  }
+
+  @Test
+  public void readsEntryAndReferencedFiles() throws Exception {
+    BundleWarmer.Result result = BundleWarmer.warm(bundle, true);
+    assertEquals(Arrays.asList("index.html", "assets/index-abc.js", "assets/vendor-def.js", "assets/index-ghi.css"), result.files);
+    assertTrue(result.corrupt.isEmpty());
+    assertTrue(new File(bundle, BundleWarmer.ASSETS).exists());
+
+    // the cached list is used even after index.html changes
+    Files.write(new File(bundle, "index.html").toPath(), "<html></html>".getBytes(StandardCharsets.UTF_8));
+    assertEquals(4, BundleWarmer.warm(bundle, false).files.size());
+  }
+
+  @Test
+  public void reportsFilesThatDoNotMatchTheManifest() throws Exception {
+    Files.write(new File(bundle, "assets/index-ghi.css").toPath(), "body{color:red}".getBytes(StandardCharsets.UTF_8));
+    assertEquals(Arrays.asList("assets/index-ghi.css"), BundleWarmer.warm(bundle, false).corrupt);
+  }
+
+  @Test
+  public void localPaths() {
+    assertEquals("assets/a.js", BundleWarmer.local("/assets/a.js?x=1"));
+    assertEquals("a.css", BundleWarmer.local("./a.css#top"));
+    assertNull(BundleWarmer.local("https://example.com/a.js"));
+    assertNull(BundleWarmer.local("//cdn.example.com/a.js"));
+    assertNull(BundleWarmer.local("data:text/css,body{}"));
+    assertNull(BundleWarmer.local("../outside.js"));
+  }
+}
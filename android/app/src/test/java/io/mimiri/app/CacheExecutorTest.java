@@ -0,0 +1,103 @@
+package io.mimiri.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class CacheExecutorTest {
+
+  @Test
+  public void readWaitsForPendingWriteOfSameRow() throws Exception {
+    CacheExecutor executor = new CacheExecutor(2);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    List<String> order = new CopyOnWriteArrayList<>();
+    executor.write("note:a", () -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      order.add("write");
+    });
+    executor.read("note:a", () -> {
+      order.add("read");
+      done.countDown();
+    });
+    Thread.sleep(50);
+    assertTrue(order.isEmpty());
+    release.countDown();
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals("[write, read]", order.toString());
+    executor.shutdown();
+  }
+
+  @Test
+  public void readOfOtherRowSkipsPendingWrite() throws Exception {
+    CacheExecutor executor = new CacheExecutor(2);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(2);
+    executor.write(Arrays.asList("note:a", "note:b"), () -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    executor.read("note:c", done::countDown);
+    executor.read(done::countDown);
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    release.countDown();
+    executor.shutdown();
+  }
+
+  @Test
+  public void readAfterFinishedWriteUsesReadPool() throws Exception {
+    CacheExecutor executor = new CacheExecutor(2);
+    CountDownLatch written = new CountDownLatch(1);
+    executor.write("note:a", written::countDown);
+    assertTrue(written.await(5, TimeUnit.SECONDS));
+    // the pending count drops right after the task, give it a moment
+    Thread.sleep(50);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    executor.write("note:b", () -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    executor.read("note:a", done::countDown);
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    release.countDown();
+    executor.shutdown();
+  }
+
+  @Test
+  public void readsRunInParallelWithoutWrites() throws Exception {
+    CacheExecutor executor = new CacheExecutor(2);
+    CountDownLatch both = new CountDownLatch(2);
+    CountDownLatch done = new CountDownLatch(2);
+    for (int i = 0; i < 2; i++) {
+      executor.read(() -> {
+        both.countDown();
+        try {
+          // only returns when the other read runs at the same time
+          assertTrue(both.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        done.countDown();
+      });
+    }
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    executor.shutdown();
+  }
+}
@@ -0,0 +1,76 @@
+package io.mimiri.app;
+
+import static org.junit.Assert.*;
+
+import com.getcapacitor.JSObject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class FileUtilTest {
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("file-util").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.deleteDir(dir);
+  }
+
+  @Test
+  public void atomicWriteReplacesContentWithoutLeftovers() throws Exception {
+    File config = new File(dir, "config.json");
+    FileUtil.writeAtomic(config, "{\"activeVersion\":\"a\"}");
+    FileUtil.writeAtomic(config, "{\"activeVersion\":\"b\"}");
+    assertEquals("{\"activeVersion\":\"b\"}", FileUtil.readAllText(config));
+    assertArrayEquals(new String[] { "config.json" }, dir.list());
+  }
+
+  @Test
+  public void readAllTextKeepsLineBreaksAndUtf8() throws Exception {
+    File file = new File(dir, "text");
+    Files.write(file.toPath(), "first\nsecond\r\nthird \u2013 \u00e6\u00f8\u00e5".getBytes(StandardCharsets.UTF_8));
+    assertEquals("first\nsecond\r\nthird \u2013 \u00e6\u00f8\u00e5", FileUtil.readAllText(file));
+  }
+
+  @Test
+  public void jsonRoundTripIsCompact() {
+    File file = new File(dir, "settings.config");
+    JSObject json = new JSObject();
+    json.put("theme", "dark");
+    json.put("fontSize", 14);
+    FileUtil.writeJson(file, json);
+    assertFalse(FileUtil.readAllText(file).contains("\n"));
+    JSObject read = FileUtil.readJson(file);
+    assertEquals("dark", read.getString("theme"));
+    assertEquals(Integer.valueOf(14), read.getInteger("fontSize"));
+  }
+
+  @Test
+  public void missingOrBrokenJsonReadsAsNull() throws Exception {
+    assertNull(FileUtil.readJson(new File(dir, "missing.json")));
+    File broken = new File(dir, "broken.json");
+    Files.write(broken.toPath(), "{\"truncated\":".getBytes(StandardCharsets.UTF_8));
+    assertNull(FileUtil.readJson(broken));
+  }
+
+  @Test
+  public void deleteDirRemovesNestedTree() throws Exception {
+    File nested = new File(dir, "a/b/c");
+    assertTrue(nested.mkdirs());
+    Files.write(new File(nested, "file").toPath(), new byte[] { 1 });
+    Files.write(new File(dir, "a/top").toPath(), new byte[] { 2 });
+    FileUtil.deleteDir(new File(dir, "a"));
+    assertFalse(new File(dir, "a").exists());
+    FileUtil.deleteDir(new File(dir, "a"));
+  }
+}
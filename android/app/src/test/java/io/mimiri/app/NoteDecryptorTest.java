@@ -0,0 +1,154 @@
+package io.mimiri.app;
+
+import static org.junit.Assert.*;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+public class NoteDecryptorTest {
+  private final SecureRandom random = new SecureRandom();
+  private byte[] noteKey;
+  private NoteDecryptor decryptor;
+
+  @Before
+  public void setUp() throws Exception {
+    noteKey = randomBytes(32);
+    decryptor = new NoteDecryptor(4);
+    decryptor.addKey("key-a", new NoteDecryptor.Key(NoteDecryptor.GCM, noteKey));
+  }
+
+  @After
+  public void tearDown() {
+    decryptor.close();
+  }
+
+  @Test
+  public void decryptsGcmCbcAndZippedPayloads() throws Exception {
+    byte[] cbcKey = randomBytes(32);
+    NoteDecryptor.Key cbc = new NoteDecryptor.Key(NoteDecryptor.CBC, cbcKey);
+    StringBuilder large = new StringBuilder();
+    while (large.length() < 4096) {
+      large.append("{\"text\":\"repeated note content\"}");
+    }
+    NoteDecryptor.Key gcm = new NoteDecryptor.Key(NoteDecryptor.GCM, noteKey);
+    assertEquals("hello", NoteDecryptor.decrypt(gcm, encrypt(NoteDecryptor.GCM, noteKey, utf8("hello"))));
+    assertEquals("hello", NoteDecryptor.decrypt(cbc, encrypt(NoteDecryptor.CBC, cbcKey, utf8("hello"))));
+    assertEquals(large.toString(), NoteDecryptor.decrypt(gcm, encrypt(NoteDecryptor.GCM, noteKey, zipped(large.toString()))));
+    byte[] bom = { (byte) 0xef, (byte) 0xbb, (byte) 0xbf, 'x' };
+    assertEquals("x", NoteDecryptor.decrypt(gcm, encrypt(NoteDecryptor.GCM, noteKey, bom)));
+  }
+
+  @Test
+  public void decryptsNotesInOrderAndFlagsFailures() throws Exception {
+    List<String> notes = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      notes.add(note("note-" + i, "key-a", encrypt(NoteDecryptor.GCM, noteKey, utf8("{\"title\":\"" + i + "\"}"))));
+    }
+    notes.add(note("tampered", "key-a", encrypt(NoteDecryptor.GCM, randomBytes(32), utf8("{}"))));
+    notes.add(note("orphan", "key-b", encrypt(NoteDecryptor.GCM, noteKey, utf8("{}"))));
+
+    List<JSObject> result = decryptor.decryptNotes(notes);
+    assertEquals(52, result.size());
+    for (int i = 0; i < 50; i++) {
+      JSONObject item = result.get(i).getJSONArray("items").getJSONObject(0);
+      assertEquals("note-" + i, result.get(i).getString("id"));
+      assertEquals("{\"title\":\"" + i + "\"}", item.getString("data"));
+      assertTrue(item.getBoolean("decrypted"));
+    }
+    assertTrue(result.get(50).getJSONArray("items").getJSONObject(0).has("error"));
+    assertTrue(result.get(51).getJSONArray("items").getJSONObject(0).getString("error").contains("key-b"));
+  }
+
+  @Test
+  public void unwrapsKeyDataWithTheRootKey() throws Exception {
+    byte[] rootKey = randomBytes(32);
+    byte[] wrapped = randomBytes(32);
+    JSONObject keyData = new JSONObject();
+    keyData.put("name", "key-c");
+    keyData.put("algorithm", NoteDecryptor.CBC);
+    keyData.put("keyData", encrypt(NoteDecryptor.GCM, rootKey, wrapped));
+    decryptor.addKeyData(keyData.toString(), new NoteDecryptor.Key(NoteDecryptor.GCM, rootKey));
+    assertTrue(decryptor.hasKey("key-c"));
+
+    String data = encrypt(NoteDecryptor.CBC, wrapped, utf8("shared"));
+    JSObject result = decryptor.decryptNotes(Arrays.asList(note("n", "key-c", data))).get(0);
+    assertEquals("shared", result.getJSONArray("items").getJSONObject(0).getString("data"));
+  }
+
+  @Test
+  public void rejectsUnknownAlgorithms() {
+    try {
+      new NoteDecryptor.Key("AES;CTR;32", noteKey);
+      fail("expected unsupported algorithm");
+    } catch (Exception e) {
+      assertTrue(e.getMessage().contains("AES;CTR;32"));
+    }
+  }
+
+  private static String note(String id, String keyName, String data) throws Exception {
+    JSONObject item = new JSONObject();
+    item.put("version", 1);
+    item.put("type", "metadata");
+    item.put("data", data);
+    JSONObject note = new JSONObject();
+    note.put("id", id);
+    note.put("keyName", keyName);
+    note.put("items", new JSONArray().put(item));
+    return note.toString();
+  }
+
+  // iv followed by ciphertext, base64, as SymmetricCrypt.encryptBytes produces
+  private String encrypt(String algorithm, byte[] key, byte[] plain) throws Exception {
+    boolean gcm = NoteDecryptor.GCM.equals(algorithm);
+    byte[] iv = randomBytes(gcm ? 12 : 16);
+    Cipher cipher = Cipher.getInstance(gcm ? "AES/GCM/NoPadding" : "AES/CBC/PKCS5Padding");
+    SecretKeySpec spec = new SecretKeySpec(key, "AES");
+    if (gcm) {
+      cipher.init(Cipher.ENCRYPT_MODE, spec, new GCMParameterSpec(128, iv));
+    } else {
+      cipher.init(Cipher.ENCRYPT_MODE, spec, new IvParameterSpec(iv));
+    }
+    byte[] encrypted = cipher.doFinal(plain);
+    byte[] combined = Arrays.copyOf(iv, iv.length + encrypted.length);
+    System.arraycopy(encrypted, 0, combined, iv.length, encrypted.length);
+    return Base64.getEncoder().encodeToString(combined);
+  }
+
+  private static byte[] zipped(String text) throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    output.write(new byte[] { 0, 0, 0, 1 });
+    try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+      gzip.write(utf8(text));
+    }
+    return output.toByteArray();
+  }
+
+  private static byte[] utf8(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private byte[] randomBytes(int length) {
+    byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,76 @@
+package io.mimiri.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Locale;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+public class PasswordHasherTest {
+  private static final String ALGORITHM = "PBKDF2;SHA512;2048";
+
+  @Test
+  public void matchesPbkdf2Vector() throws Exception {
+    // PBKDF2-HMAC-SHA512("password", "salt", 1), the first 64 bytes of the 256 the hasher produces
+    String hash = PasswordHasher.hashPassword("password", hex("salt"), ALGORITHM, 1);
+    assertEquals(512, hash.length());
+    assertEquals(("867f70cf1ade02cff3752599a3a53dc4af34c7a669815ae5d513554e1c8cf252"
+      + "c02d470a285a0501bad999bfe943c08f050235d7d68b1da55e63f73b60a57fce").toUpperCase(Locale.ROOT), hash.substring(0, 128));
+  }
+
+  @Test
+  public void matchesPlatformPbkdf2() throws Exception {
+    String salt = "00FF10a0b1c2d3e4f5";
+    for (int iterations : new int[] { 1, 2, 1000 }) {
+      for (String password : new String[] { "p", "correct horse battery staple", "\u00e6\u00f8\u00e5 \u2603 \ud83d\ude00" }) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), PasswordHasher.fromHex(salt), iterations, 2048);
+        byte[] expected = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA512").generateSecret(spec).getEncoded();
+        assertEquals(HashUtil.toHex(expected).toUpperCase(Locale.ROOT), PasswordHasher.hashPassword(password, salt, ALGORITHM, iterations));
+      }
+    }
+  }
+
+  @Test
+  public void emptyPasswordHashesLikeWebCrypto() throws Exception {
+    // an empty HMAC key pads to the same block as a single zero byte
+    assertEquals(PasswordHasher.hashPassword("\u0000", "00ff", ALGORITHM, 3), PasswordHasher.hashPassword("", "00ff", ALGORITHM, 3));
+  }
+
+  @Test
+  public void loneSurrogatesEncodeAsReplacementCharacter() {
+    assertArrayEquals(new byte[] { 'a', (byte) 0xef, (byte) 0xbf, (byte) 0xbd, 'b' }, PasswordHasher.utf8("a\ud800b"));
+  }
+
+  @Test
+  public void rejectsOtherAlgorithms() throws Exception {
+    try {
+      PasswordHasher.hashPassword("p", "00", "PBKDF2;SHA256", 1);
+      fail("expected unsupported algorithm");
+    } catch (GeneralSecurityException e) {
+      assertTrue(e.getMessage().contains("PBKDF2;SHA256"));
+    }
+  }
+
+  @Test
+  public void computeResponseMatchesHmacVector() throws Exception {
+    // RFC 4231 test case 2
+    String response = PasswordHasher.computeResponse(hex("Jefe"), hex("what do ya want for nothing?"));
+    assertEquals(("164b7a7bfcf819e2e395fbe73b56e0a387bd64222e831fd610270cd7ea250554"
+      + "9758bf75c05a994a6d034f65f8f0e6fdcaeab1a34d4a6b4b636e070a38bce737").toUpperCase(Locale.ROOT), response);
+  }
+
+  @Test
+  public void fromHexScansPairsLikeTheWebLayer() {
+    assertArrayEquals(new byte[] { 0x12, (byte) 0xab }, PasswordHasher.fromHex("0g12AB3"));
+    assertArrayEquals(new byte[] { 0x00, (byte) 0xff }, PasswordHasher.fromHex("00ff"));
+  }
+
+  private static String hex(String text) {
+    return HashUtil.toHex(text.getBytes(StandardCharsets.UTF_8));
+  }
+}
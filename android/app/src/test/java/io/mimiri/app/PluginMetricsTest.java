@@ -0,0 +1,109 @@
+package io.mimiri.app;
+
+import static org.junit.Assert.*;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class PluginMetricsTest {
+  private File dir;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = Files.createTempDirectory("plugin-metrics").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.deleteDir(dir);
+  }
+
+  @Test
+  public void bucketsArePowersOfTwoMilliseconds() {
+    assertEquals(0, PluginMetrics.bucket(999_999));
+    assertEquals(1, PluginMetrics.bucket(1_000_000));
+    assertEquals(2, PluginMetrics.bucket(3_000_000));
+    assertEquals(3, PluginMetrics.bucket(4_000_000));
+    assertEquals(PluginMetrics.BUCKETS - 1, PluginMetrics.bucket(3_600_000_000_000L));
+  }
+
+  @Test
+  public void utf8LengthMatchesEncodedSize() {
+    for (String text : new String[] { "", "ascii", "\u00e5\u00e4\u00f6", "\u20ac10", "\ud83d\ude00 x", "\ud83d" }) {
+      assertEquals(text.getBytes(StandardCharsets.UTF_8).length, PluginMetrics.utf8Length(text));
+    }
+  }
+
+  @Test
+  public void recordsCountsErrorsBytesAndRows() throws Exception {
+    PluginMetrics.Method method = new PluginMetrics.Method();
+    for (int i = 0; i < 98; i++) {
+      method.record(500_000, false, 100, 1);
+    }
+    method.record(5_000_000, true, 4000, 0);
+    method.record(40_000_000, false, 0, 10);
+    JSObject json = method.toJson();
+    assertEquals(100, json.getLong("calls"));
+    assertEquals(1, json.getLong("errors"));
+    assertEquals(98 * 100 + 4000, json.getLong("bytes"));
+    assertEquals(4000, json.getLong("maxBytes"));
+    assertEquals(108, json.getLong("rows"));
+    assertEquals(1, json.getLong("p50Ms"));
+    assertEquals(1, json.getLong("p95Ms"));
+    assertEquals(8, json.getLong("p99Ms"));
+    assertEquals(40.0, json.getDouble("maxMs"), 0.001);
+    JSONArray histogram = json.getJSONArray("histogram");
+    assertEquals(PluginMetrics.BUCKETS, histogram.length());
+    assertEquals(98, histogram.getLong(0));
+    assertEquals(1, histogram.getLong(3));
+    assertEquals(1, histogram.getLong(6));
+  }
+
+  @Test
+  public void resetClearsInPlace() throws Exception {
+    PluginMetrics.Method method = new PluginMetrics.Method();
+    method.record(5_000_000, true, 4000, 3);
+    method.reset();
+    JSObject json = method.toJson();
+    assertEquals(0, json.getLong("calls"));
+    assertEquals(0, json.getLong("errors"));
+    assertEquals(0, json.getLong("bytes"));
+    assertEquals(0, json.getLong("rows"));
+    assertEquals(0.0, json.getDouble("maxMs"), 0.001);
+    assertEquals(0, json.getJSONArray("histogram").getLong(3));
+    // a call that was in flight during the reset still lands in the same instance
+    method.record(500_000, false, 10, 1);
+    assertEquals(1, method.toJson().getLong("calls"));
+  }
+
+  @Test
+  public void percentileOfEmptyAndOpenBucket() {
+    long[] counts = new long[PluginMetrics.BUCKETS];
+    assertEquals(0, PluginMetrics.percentile(counts, 0.5));
+    counts[PluginMetrics.BUCKETS - 1] = 1;
+    assertEquals(-1, PluginMetrics.percentile(counts, 0.5));
+  }
+
+  @Test
+  public void ringFileKeepsTheLastEntries() throws Exception {
+    File file = new File(dir, "metrics.json");
+    for (int i = 0; i < 5; i++) {
+      JSObject snapshot = new JSObject();
+      snapshot.put("time", i);
+      PluginMetrics.writeRing(file, snapshot, 3);
+    }
+    JSONArray stored = new JSONArray(FileUtil.readAllText(file));
+    assertEquals(3, stored.length());
+    assertEquals(2, ((JSONObject) stored.get(0)).getInt("time"));
+    assertEquals(4, ((JSONObject) stored.get(2)).getInt("time"));
+  }
+}
@@ -0,0 +1,80 @@
+package io.mimiri.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class ProofOfWorkTest {
+
+  @Test
+  public void solutionHasTheJsShapeAndEnoughZeroBits() throws Exception {
+    for (int threads : new int[] { 1, 4 }) {
+      String value = "user:name \u00e6\u00f8\u00e5";
+      String proof = new ProofOfWork().compute(value, 12, threads);
+      assertNotNull(proof);
+      int split = proof.indexOf("::");
+      String hash = proof.substring(0, split);
+      String message = proof.substring(split + 2);
+      assertEquals(hash, HashUtil.toHex(HashUtil.sha256().digest(message.getBytes(StandardCharsets.UTF_8))));
+      assertTrue(hash, hash.startsWith("000"));
+
+      String[] parts = message.split(":", 4);
+      assertTrue(parts[0].matches("\\d{13}"));
+      assertTrue(parts[1], parts[1].equals("-") || parts[1].matches("[0-9a-f]{64}"));
+      assertTrue(parts[2].matches("\\d+"));
+      assertEquals(value, parts[3]);
+    }
+  }
+
+  @Test
+  public void zeroBitsAcceptsTheFirstMessage() throws Exception {
+    String proof = new ProofOfWork().compute("v", 0, 1);
+    String[] parts = proof.substring(proof.indexOf("::") + 2).split(":", 4);
+    assertEquals("-", parts[1]);
+    assertEquals("0", parts[2]);
+  }
+
+  @Test
+  public void partialByteMaskMatchesJs() {
+    byte[] hash = new byte[32];
+    hash[0] = 0;
+    hash[1] = 0x0f;
+    // 12 bits: first byte zero and the high nibble of the second
+    assertTrue(ProofOfWork.matches(hash, 1, 0xff & (0xff << 4)));
+    assertFalse(ProofOfWork.matches(hash, 1, 0xff & (0xff << 3)));
+    assertFalse(ProofOfWork.matches(hash, 2, 0));
+  }
+
+  @Test
+  public void cancelStopsAllWorkers() throws Exception {
+    ProofOfWork work = new ProofOfWork();
+    String[] result = { "unset" };
+    Thread thread = new Thread(() -> {
+      try {
+        result[0] = work.compute("value", 256, 4);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    thread.start();
+    Thread.sleep(50);
+    work.cancel();
+    thread.join(5000);
+    assertFalse(thread.isAlive());
+    assertNull(result[0]);
+  }
+
+  @Test
+  public void writeLongFormatsDecimal() {
+    byte[] buffer = new byte[24];
+    buffer[0] = 'x';
+    int end = ProofOfWork.writeLong(buffer, 1, 1700000000123L);
+    assertEquals("x1700000000123", new String(buffer, 0, end, StandardCharsets.US_ASCII));
+    end = ProofOfWork.writeLong(buffer, 0, 0);
+    assertEquals("0", new String(buffer, 0, end, StandardCharsets.US_ASCII));
+    end = ProofOfWork.writeLong(buffer, 0, Long.MAX_VALUE);
+    assertEquals(Long.toString(Long.MAX_VALUE), new String(buffer, 0, end, StandardCharsets.US_ASCII));
+  }
+}
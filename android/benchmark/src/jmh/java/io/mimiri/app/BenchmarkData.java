@@ -0,0 +1,35 @@
+package io.mimiri.app;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Deterministic inputs shared by the benchmarks, so results of different runs stay comparable.
+ */
+class BenchmarkData {
+  private static final String[] WORDS = { "function", "return", "const", "export", "import", "=>", "{", "}", "(", ")", ";", "mimiri", "note", "\u00e6\u00f8\u00e5" };
+
+  // text of roughly script or note content, exactly chars characters long
+  static String text(int chars, long seed) {
+    Random random = new Random(seed);
+    StringBuilder content = new StringBuilder(chars + 16);
+    while (content.length() < chars) {
+      content.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+    }
+    content.setLength(chars);
+    return content.toString();
+  }
+
+  // base64 of the gzipped text, the form save() sends bundle files in
+  static String packed(String text) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+      gzip.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+    return Base64.getEncoder().encodeToString(compressed.toByteArray());
+  }
+}
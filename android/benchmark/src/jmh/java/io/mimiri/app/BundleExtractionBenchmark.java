@@ -0,0 +1,131 @@
+package io.mimiri.app;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction of a synthetic bundle the way save() does it: the nested files structure is flattened
+ * with collect and every base64 gzip file is decoded, inflated and written by writeAll.
+ */
+@BenchmarkMode(Mode.AverageTime)
+public class BundleExtractionBenchmark {
+  private static final int DIRS = 10;
+  private static final int FILES = 30;
+  private static final int FILE_CHARS = 96 * 1024;
+
+  @State(Scope.Benchmark)
+  public static class Bundle {
+    JSONArray files;
+    String single;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, JSONException {
+      files = new JSONArray();
+      for (int i = 0; i < DIRS; i++) {
+        JSONArray dir = new JSONArray();
+        for (int j = 0; j < FILES; j++) {
+          String content = BenchmarkData.packed(BenchmarkData.text(FILE_CHARS, i * FILES + j));
+          dir.put(new JSONObject().put("name", "chunk-" + j + ".js").put("content", content));
+        }
+        files.put(new JSONObject().put("name", "assets-" + i).put("files", dir));
+      }
+      single = BenchmarkData.packed(BenchmarkData.text(FILE_CHARS, -1));
+    }
+  }
+
+  // every extraction needs an empty staging directory, creating it is negligible next to the bundle
+  @State(Scope.Benchmark)
+  public static class Install {
+    // 0 extracts on all cores
+    @Param({ "1", "0" })
+    public int threads;
+
+    File root;
+    BundleInstall install;
+    private int _count;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+      root = Files.createTempDirectory("bundle-benchmark").toFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      FileUtil.deleteDir(root);
+    }
+
+    @Setup(Level.Invocation)
+    public void create() throws IOException {
+      String name = "bundle-" + _count++;
+      install = new BundleInstall(name, new File(root, name));
+    }
+
+    @TearDown(Level.Invocation)
+    public void abort() {
+      install.abort();
+    }
+
+    int workers() {
+      return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+  }
+
+  // one install reused for all writes of the same file, which is simply overwritten
+  @State(Scope.Benchmark)
+  public static class Single {
+    File root;
+    BundleInstall install;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+      root = Files.createTempDirectory("bundle-benchmark").toFile();
+      install = new BundleInstall("single", new File(root, "single"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      install.abort();
+      FileUtil.deleteDir(root);
+    }
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public List<String[]> collect(Bundle bundle) throws JSONException {
+    List<String[]> files = new ArrayList<>(DIRS * FILES);
+    BundleInstall.collect("", bundle.files, files);
+    return files;
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public void extract(Bundle bundle, Install install) throws IOException, JSONException {
+    List<String[]> files = new ArrayList<>(DIRS * FILES);
+    BundleInstall.collect("", bundle.files, files);
+    install.install.writeAll(files, install.workers());
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public void writeSingleFile(Bundle bundle, Single single) throws IOException {
+    single.install.write("assets/chunk.js", bundle.single);
+  }
+}
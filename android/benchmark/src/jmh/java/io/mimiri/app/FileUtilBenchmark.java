@@ -0,0 +1,71 @@
+package io.mimiri.app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole file reads and atomic writes of config, note and bundle sized files. The writes include the
+ * fsync of the file and its directory, so they measure the storage as much as the code.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FileUtilBenchmark {
+  @Param({ "1024", "65536", "1048576" })
+  public int size;
+
+  private File _dir;
+  private File _source;
+  private File _target;
+  private String _text;
+  private byte[] _data;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    _dir = Files.createTempDirectory("file-util-benchmark").toFile();
+    _source = new File(_dir, "source.json");
+    _target = new File(_dir, "target.json");
+    _text = BenchmarkData.text(size, 42);
+    _data = _text.getBytes(StandardCharsets.UTF_8);
+    FileUtil.writeAtomic(_source, _data);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    FileUtil.deleteDir(_dir);
+  }
+
+  @Benchmark
+  public byte[] readAllBytes() throws IOException {
+    return FileUtil.readAllBytes(_source);
+  }
+
+  @Benchmark
+  public String readAllText() {
+    return FileUtil.readAllText(_source);
+  }
+
+  @Benchmark
+  public void writeAtomicBytes() throws IOException {
+    FileUtil.writeAtomic(_target, _data);
+  }
+
+  @Benchmark
+  public void writeAtomicText() throws IOException {
+    FileUtil.writeAtomic(_target, _text);
+  }
+}
@@ -0,0 +1,72 @@
+package io.mimiri.app;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of NoteData shaped JSON, as passed between the plugins and the web layer, for
+ * small, typical and large notes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NoteJsonBenchmark {
+  @Param({ "1024", "16384", "262144" })
+  public int size;
+
+  private String _id;
+  private String _text;
+  private String _metadata;
+  private String _json;
+
+  @Setup(Level.Trial)
+  public void setUp() throws JSONException {
+    _id = UUID.nameUUIDFromBytes(new byte[] { 42 }).toString();
+    _text = BenchmarkData.text(size, 42);
+    _metadata = new JSONObject().put("title", "Benchmark note").put("created", "2024-03-03T12:00:00.000Z").toString();
+    _json = encode();
+  }
+
+  @Benchmark
+  public String encode() throws JSONException {
+    JSONArray items = new JSONArray();
+    items.put(new JSONObject().put("type", "metadata").put("version", 3).put("data", _metadata));
+    items.put(new JSONObject().put("type", "text").put("version", 7).put("data", _text));
+    JSObject note = new JSObject();
+    note.put("id", _id);
+    note.put("keyName", _id);
+    note.put("modified", "2024-03-03T12:00:00.000Z");
+    note.put("size", size);
+    note.put("items", items);
+    return note.toString();
+  }
+
+  @Benchmark
+  public String decode() throws JSONException {
+    JSObject note = new JSObject(_json);
+    JSONArray items = note.getJSONArray("items");
+    String text = null;
+    for (int i = 0; i < items.length(); i++) {
+      JSONObject item = items.getJSONObject(i);
+      if ("text".equals(item.getString("type"))) {
+        text = item.getString("data");
+      }
+    }
+    return text;
+  }
+}
@@ -0,0 +1,39 @@
+package io.mimiri.app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * PasswordHasher against the platform's single threaded PBKDF2WithHmacSHA512 across iteration counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PasswordHashBenchmark {
+  private static final String SALT = "0123456789abcdef0123456789abcdef";
+
+  @Param({ "1000", "10000", "100000" })
+  public int iterations;
+
+  @Benchmark
+  public byte[] platform() throws GeneralSecurityException {
+    PBEKeySpec spec = new PBEKeySpec("benchmark".toCharArray(), PasswordHasher.fromHex(SALT), iterations, 2048);
+    return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA512").generateSecret(spec).getEncoded();
+  }
+
+  @Benchmark
+  public String hasher() throws GeneralSecurityException, InterruptedException {
+    return PasswordHasher.hashPassword("benchmark", SALT, "PBKDF2;SHA512", iterations);
+  }
+}
@@ -0,0 +1,41 @@
+package io.mimiri.app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Version comparisons as done when picking the active bundle, for the shapes seen in practice.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VersionUtilBenchmark {
+  // fields rather than literals, so the comparison is not constant folded
+  private String _numeric = "2.4.17";
+  private String _numericThan = "2.4.9";
+  private String _prerelease = "2.5.0-beta.3";
+  private String _prereleaseThan = "2.5.0-beta.12";
+  private String _longer = "2.4.17.1";
+  private String _shorter = "2.4.17";
+
+  @Benchmark
+  public boolean numeric() {
+    return VersionUtil.isGreater(_numeric, _numericThan);
+  }
+
+  @Benchmark
+  public boolean prerelease() {
+    return VersionUtil.isGreater(_prerelease, _prereleaseThan);
+  }
+
+  @Benchmark
+  public boolean differentLength() {
+    return VersionUtil.isGreater(_longer, _shorter);
+  }
+}
@@ -0,0 +1,17 @@
+package com.getcapacitor;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Stand-in for Capacitor's JSObject on a plain JVM. The benchmarked code only constructs it and uses
+// the JSONObject methods, so the subclass is enough.
+public class JSObject extends JSONObject {
+
+  public JSObject() {
+    super();
+  }
+
+  public JSObject(String json) throws JSONException {
+    super(json);
+  }
+}
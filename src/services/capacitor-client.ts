@@ -93,6 +93,10 @@ interface SettingsPlugin {
 interface MimiriUpdatePlugin {
 	getInstalledVersions(): Promise<{ bundles: InstalledBundleInfo[] }>
 	save(data: { version: string; bundle: Bundle }): Promise<void>
+	beginSave(data: { version: string }): Promise<void>
+	saveChunk(data: { version: string; path: string; data: string; last: boolean }): Promise<void>
+	commitSave(data: { version: string; info: Omit<Bundle, 'files' | 'signatures'>; prewarm?: boolean }): Promise<void>
+	abortSave(data: { version: string }): Promise<void>
 	use(data: { version: string; noActivate: boolean }): Promise<void>
 	activate(): Promise<void>
 	delete(data: { version: string }): Promise<void>
@@ -110,14 +114,52 @@ class CapacitorSettings implements IpcSettingsApi {
 	}
 }
 
+// base64 characters per bridge message, must stay a multiple of 4 so every chunk decodes on its own
+const BUNDLE_CHUNK_SIZE = 512 * 1024
+
 class MimiriBundle implements IpcBundleApi {
 	constructor(private bundle: MimiriUpdatePlugin) {}
+
+	private async saveFiles(version: string, prefix: string, files: any[]): Promise<void> {
+		for (const file of files) {
+			const path = prefix + file.name
+			if (file.files) {
+				await this.saveFiles(version, `${path}/`, file.files)
+				continue
+			}
+			const content: string = file.content
+			let offset = 0
+			do {
+				const data = content.substring(offset, offset + BUNDLE_CHUNK_SIZE)
+				offset += BUNDLE_CHUNK_SIZE
+				await this.bundle.saveChunk({ version, path, data, last: offset >= content.length })
+			} while (offset < content.length)
+		}
+	}
+
 	async getInstalledVersions(): Promise<InstalledBundleInfo[]> {
 		const result = await this.bundle.getInstalledVersions()
 		return result.bundles
 	}
-	save(version: string, bundle: Bundle): Promise<void> {
-		return this.bundle.save({ version, bundle })
+	async save(version: string, bundle: Bundle): Promise<void> {
+		const { files, signatures: _signatures, ...info } = bundle
+		try {
+			await this.bundle.beginSave({ version })
+		} catch (ex) {
+			// hosts built before the streaming install only implement save
+			if (ex?.code === 'UNIMPLEMENTED') {
+				return this.bundle.save({ version, bundle })
+			}
+			throw ex
+		}
+		try {
+			await this.saveFiles(version, '', files)
+			// the new version is usually switched to right after, have its first paint files in the page cache
+			await this.bundle.commitSave({ version, info, prewarm: true })
+		} catch (ex) {
+			await this.bundle.abortSave({ version })
+			throw ex
+		}
 	}
 	use(version: string, noActivate: boolean): Promise<void> {
 		return this.bundle.use({ version, noActivate })
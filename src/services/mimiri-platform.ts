@@ -11,11 +11,19 @@ interface PlatformInfo {
 
 interface BiometryResponse {
 	verified: boolean
+	passwordHash?: string
+}
+
+interface BiometryDerive {
+	password: string
+	salt: string
+	algorithm: string
+	iterations: number
 }
 
 interface MimiriNativePlatform {
 	info(): Promise<PlatformInfo>
-	verifyBiometry(): Promise<BiometryResponse>
+	verifyBiometry(options?: { derive?: BiometryDerive }): Promise<BiometryResponse>
 }
 
 interface MimiriPlatformState {
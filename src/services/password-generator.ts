@@ -33,7 +33,7 @@ export const passwordTimeFactor = reactive({
 
 setTimeout(async () => {
 	const start = performance.now()
-	await passwordHasher.hashPassword('', '00ff', DEFAULT_PASSWORD_ALGORITHM, 100000)
+	await passwordHasher.hashPasswordWebCrypto('', '00ff', DEFAULT_PASSWORD_ALGORITHM, 100000)
 	await SymmetricCrypt.fromPassword(SymmetricCrypt.DEFAULT_SYMMETRIC_ALGORITHM, '', '00ff', 100000)
 	const elapsed = performance.now() - start
 	const factor = 154 / elapsed
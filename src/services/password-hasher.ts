@@ -1,12 +1,39 @@
+import { Capacitor, registerPlugin } from '@capacitor/core'
 import { fromHex, toHex } from './hex-base64'
 
+interface MimiriNativeHasher {
+	hashPassword(options: {
+		password: string
+		salt: string
+		algorithm: string
+		iterations: number
+	}): Promise<{ hash: string; durationMs: number }>
+	computeResponse(options: { passwordHash: string; challenge: string }): Promise<{ response: string }>
+}
+
+const nativeHasher =
+	Capacitor.isPluginAvailable('MimiriPlatform') && Capacitor.getPlatform() === 'android'
+		? registerPlugin<MimiriNativeHasher>('MimiriPlatform')
+		: undefined
+
 class PasswordHasher {
 	async hashPassword(password: string, salt: string, algorithm: string, iterations: number): Promise<string> {
 		const algorithmParts = algorithm.split(';')
 		if (algorithmParts[0] != 'PBKDF2' || algorithmParts[1] != 'SHA512') {
 			throw new Error(`Unsupported Algorithm ${algorithm}`)
 		}
+		if (nativeHasher) {
+			return (await nativeHasher.hashPassword({ password, salt, algorithm, iterations })).hash
+		}
+		return this.hashPasswordWebCrypto(password, salt, algorithm, iterations)
+	}
 
+	// Always hashes through WebCrypto, so timing calibrations stay comparable across platforms
+	async hashPasswordWebCrypto(password: string, salt: string, algorithm: string, iterations: number): Promise<string> {
+		const algorithmParts = algorithm.split(';')
+		if (algorithmParts[0] != 'PBKDF2' || algorithmParts[1] != 'SHA512') {
+			throw new Error(`Unsupported Algorithm ${algorithm}`)
+		}
 		const passwordBuffer = new TextEncoder().encode(password)
 
 		const passwordKey = await crypto.subtle.importKey('raw', passwordBuffer, { name: 'PBKDF2' }, false, ['deriveBits'])
@@ -24,6 +51,9 @@ class PasswordHasher {
 	}
 
 	async computeResponse(passwordHash: string, challenge: string): Promise<string> {
+		if (nativeHasher) {
+			return (await nativeHasher.computeResponse({ passwordHash, challenge })).response
+		}
 		const hmacKey = await crypto.subtle.importKey(
 			'raw',
 			fromHex(passwordHash),
@@ -1,15 +1,43 @@
+import { Capacitor, registerPlugin } from '@capacitor/core'
+import { newGuid } from './types/guid'
+
+interface MimiriNativeProofOfWork {
+	compute(options: { value: string; bits: number; id?: string }): Promise<{ proof: string; durationMs: number }>
+	cancel(options: { id: string }): Promise<{ cancelled: boolean }>
+}
+
+const nativeProofOfWork = Capacitor.isPluginAvailable('MimiriProofOfWork')
+	? registerPlugin<MimiriNativeProofOfWork>('MimiriProofOfWork')
+	: undefined
+
 const buf2hex = buffer => {
 	return [...new Uint8Array(buffer)].map(x => x.toString(16).padStart(2, '0')).join('')
 }
 
 export class ProofOfWork {
-	static async compute(value: string, entropyBits: number) {
+	static async compute(value: string, entropyBits: number, signal?: AbortSignal) {
+		signal?.throwIfAborted()
+		if (nativeProofOfWork) {
+			const id = newGuid()
+			const onAbort = () => void nativeProofOfWork.cancel({ id }).catch(() => {})
+			signal?.addEventListener('abort', onAbort)
+			try {
+				return (await nativeProofOfWork.compute({ value, bits: entropyBits, id })).proof
+			} catch (err) {
+				// the native side only reports "Cancelled", surface the reason the caller aborted with
+				signal?.throwIfAborted()
+				throw err
+			} finally {
+				signal?.removeEventListener('abort', onAbort)
+			}
+		}
 		const fullBytes = Math.floor(entropyBits / 8)
 		const remainingBits = entropyBits - fullBytes * 8
 		let hash
 		let nonce = 0
 
 		while (true) {
+			signal?.throwIfAborted()
 			const message = `${Date.now()}:${hash ?? '-'}:${nonce++}:${value}`
 			const result = await crypto.subtle.digest('SHA-256', new TextEncoder().encode(message))
 			hash = buf2hex(result)
@@ -34,12 +34,12 @@ export class AuthenticationManager {
 		this.api.setAuthManager(this)
 	}
 
-	public async checkUsername(username: string): Promise<boolean> {
+	public async checkUsername(username: string, signal?: AbortSignal): Promise<boolean> {
 		if (env.DEV && username.startsWith('auto_test_')) {
 			return true
 		}
 		while (true) {
-			const pow = await ProofOfWork.compute(username, this._proofBits)
+			const pow = await ProofOfWork.compute(username, this._proofBits, signal)
 			const res = await this.api.checkUsername(username, pow)
 			if (res.bitsExpected) {
 				this._proofBits = res.bitsExpected
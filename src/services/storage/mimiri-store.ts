@@ -283,7 +283,7 @@ export class MimiriStore {
 	}
 
 	public readonly auth = {
-		checkUsername: (username: string) => this.authManager.checkUsername(username),
+		checkUsername: (username: string, signal?: AbortSignal) => this.authManager.checkUsername(username, signal),
 		setLoginData: (data: string) => this.authManager.setLoginData(data),
 		changeUserNameAndPassword: (username: string, oldPassword: string, newPassword?: string, iterations?: number) =>
 			this.authManager.changeUserNameAndPassword(username, oldPassword, newPassword, iterations),